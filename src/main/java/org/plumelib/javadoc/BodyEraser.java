@@ -0,0 +1,364 @@
+package org.plumelib.javadoc;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.plumelib.javadoc.JavaLexer.Token;
+
+/**
+ * Erases the bodies of methods, constructors, and initializers from Java source code, so that
+ * JavaParser does not build trees for their statements and expressions. Every character of an
+ * erased body, other than a line terminator or tab, is replaced by a space, so the line and column
+ * of every remaining token is unchanged.
+ *
+ * <p>A body is not erased if it declares a local or anonymous class, whose members need Javadoc
+ * unless such classes are exempt, or if it might be the body of a trivial getter or setter and such
+ * methods are exempt. Bodies inside field initializers and annotation arguments are never erased.
+ *
+ * <p>This works on tokens, not on a parse tree. If the source code is malformed in a way that
+ * confuses it, such as unbalanced braces, the source code is left unchanged, so JavaParser reports
+ * the problem.
+ */
+final class BodyEraser {
+
+  /** The lexer, whose source code is overwritten once all bodies have been found. */
+  private final JavaLexer lexer;
+
+  /** If true, don't erase bodies that might be those of trivial getters and setters. */
+  private final boolean keepTrivialProperties;
+
+  /** If true, don't erase bodies that declare local or anonymous classes. */
+  private final boolean keepClasses;
+
+  /**
+   * Creates a new BodyEraser.
+   *
+   * @param source the source code
+   * @param keepTrivialProperties if true, don't erase bodies that might be those of trivial getters
+   *     and setters
+   * @param keepClasses if true, don't erase bodies that declare local or anonymous classes
+   */
+  private BodyEraser(char[] source, boolean keepTrivialProperties, boolean keepClasses) {
+    this.lexer = new JavaLexer(source);
+    this.keepTrivialProperties = keepTrivialProperties;
+    this.keepClasses = keepClasses;
+  }
+
+  /**
+   * Erases the bodies of methods, constructors, and initializers, in place. Does nothing if the
+   * source code is malformed.
+   *
+   * @param source Java source code, which is modified
+   * @param keepTrivialProperties if true, don't erase bodies that might be those of trivial getters
+   *     and setters
+   * @param eraseClasses if true, erase bodies even if they declare local or anonymous classes
+   */
+  static void erase(char[] source, boolean keepTrivialProperties, boolean eraseClasses) {
+    BodyEraser eraser = new BodyEraser(source, keepTrivialProperties, !eraseClasses);
+    if (eraser.findBodies()) {
+      eraser.eraseBodies();
+    }
+  }
+
+  /**
+   * The bodies to erase: the indexes of the opening and closing brace of each, in order. They are
+   * erased only after the whole source code has been read, so malformed source code is left
+   * unchanged.
+   */
+  private int[] bodies = new int[32];
+
+  /** The number of elements of {@link #bodies} that are in use. */
+  private int numBodies = 0;
+
+  /** The declarations being read in the enclosing type bodies, innermost first. */
+  private final Deque<Declaration> declarations = new ArrayDeque<>();
+
+  /**
+   * What has been read of one member declaration of a type (or of the compilation unit), up to the
+   * brace or semicolon that ends its header.
+   */
+  private static final class Declaration {
+
+    /** True if this is the compilation unit, rather than the body of a type. */
+    final boolean topLevel;
+
+    /** True if this is the body of an enum, and its constants have not all been read yet. */
+    boolean inEnumConstants;
+
+    /** The parenthesis depth within the header. */
+    int parens = 0;
+
+    /** True if the header declares a type. */
+    boolean isType = false;
+
+    /** True if the header declares an enum. */
+    boolean isEnum = false;
+
+    /** True if the header contains an initializer or a default value. */
+    boolean hasInitializer = false;
+
+    /** The previous identifier in the header, if it was the previous token. */
+    @Nullable String previousIdentifier = null;
+
+    /** True if the previous token was a period. */
+    boolean previousWasDot = false;
+
+    /** The identifier before the last top-level parenthesized list, which names a method. */
+    @Nullable String methodName = null;
+
+    /** True if the last top-level parenthesized list is empty. */
+    boolean noParameters = false;
+
+    /**
+     * Creates a new Declaration.
+     *
+     * @param topLevel true if this is the compilation unit, rather than the body of a type
+     * @param isEnumBody true if this is the body of an enum
+     */
+    Declaration(boolean topLevel, boolean isEnumBody) {
+      this.topLevel = topLevel;
+      this.inEnumConstants = isEnumBody;
+    }
+
+    /** Forgets the header, after the brace or semicolon that ends it. */
+    void reset() {
+      parens = 0;
+      isType = false;
+      isEnum = false;
+      hasInitializer = false;
+      previousIdentifier = null;
+      previousWasDot = false;
+      methodName = null;
+      noParameters = false;
+    }
+
+    /**
+     * Returns true if the header might be that of a trivial getter or setter.
+     *
+     * @return true if the header might be that of a trivial getter or setter
+     */
+    boolean isPropertyCandidate() {
+      return methodName != null && (noParameters || methodName.startsWith("set"));
+    }
+  }
+
+  /**
+   * Finds the bodies to erase in the source code.
+   *
+   * @return false if the source code is malformed
+   */
+  private boolean findBodies() {
+    declarations.push(new Declaration(true, false));
+    while (true) {
+      lexer.next();
+      @SuppressWarnings("nullness:assignment") // the compilation unit is never popped
+      Declaration decl = declarations.peek();
+      switch (lexer.token) {
+        case EOF:
+          return declarations.size() == 1;
+        case LPAREN:
+          if (decl.parens == 0) {
+            decl.methodName = decl.previousIdentifier;
+            decl.noParameters = (lexer.peek() == Token.RPAREN);
+          }
+          decl.parens++;
+          break;
+        case RPAREN:
+          decl.parens--;
+          break;
+        case LBRACE:
+          if (decl.parens > 0 || decl.hasInitializer || (decl.topLevel && !decl.isType)) {
+            // An array initializer, lambda, or anonymous class in an expression.
+            if (!skipBlock()) {
+              return false;
+            }
+          } else if (decl.isType || decl.inEnumConstants) {
+            // A type body, or the body of an enum constant.
+            declarations.push(new Declaration(false, decl.isEnum));
+            decl.reset();
+          } else {
+            if (!findBody(lexer.start, keepTrivialProperties && decl.isPropertyCandidate())) {
+              return false;
+            }
+            decl.reset();
+          }
+          break;
+        case RBRACE:
+          if (decl.topLevel) {
+            return false;
+          }
+          declarations.pop();
+          break;
+        case SEMICOLON:
+          if (decl.parens == 0) {
+            decl.inEnumConstants = false;
+            decl.reset();
+          }
+          break;
+        case EQUALS:
+          if (decl.parens == 0) {
+            decl.hasInitializer = true;
+          }
+          break;
+        case IDENTIFIER:
+          if (decl.parens == 0) {
+            if (lexer.identifier.equals("class") && !decl.previousWasDot
+                || lexer.identifier.equals("interface")) {
+              decl.isType = true;
+            } else if (lexer.identifier.equals("enum")) {
+              decl.isType = true;
+              decl.isEnum = true;
+            } else if (lexer.identifier.equals("default") && decl.methodName != null) {
+              // The default value of an annotation element, not the modifier of a method.
+              decl.hasInitializer = true;
+            } else if ("record".equals(decl.previousIdentifier)) {
+              decl.isType = true;
+            }
+          }
+          break;
+        default:
+          break;
+      }
+      decl.previousIdentifier = (lexer.token == Token.IDENTIFIER ? lexer.identifier : null);
+      decl.previousWasDot = (lexer.token == Token.DOT);
+    }
+  }
+
+  /**
+   * Skips to the brace that closes a block, whose opening brace was just read.
+   *
+   * @return false if the source code ends first
+   */
+  private boolean skipBlock() {
+    int depth = 1;
+    while (depth > 0) {
+      lexer.next();
+      if (lexer.token == Token.LBRACE) {
+        depth++;
+      } else if (lexer.token == Token.RBRACE) {
+        depth--;
+      } else if (lexer.token == Token.EOF) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Reads a body, whose opening brace was just read, and records it in {@link #bodies} unless it
+   * declares a class or might be the body of a trivial getter or setter.
+   *
+   * @param open the index of the opening brace
+   * @param isPropertyCandidate true if the header might be that of a trivial getter or setter
+   * @return false if the source code ends first
+   */
+  private boolean findBody(int open, boolean isPropertyCandidate) {
+    int depth = 1;
+    int statements = 0;
+    boolean hasBlocks = false;
+    boolean declaresClass = false;
+    @Nullable String previousIdentifier = null;
+    boolean previousWasDot = false;
+    boolean previousWasColon = false;
+    // The parenthesis depths at which the arguments of pending instance creations begin; -1 for
+    // one whose arguments have not begun yet.
+    Deque<Integer> creations = new ArrayDeque<>();
+    // The depth of type arguments in the type of the innermost pending instance creation whose
+    // arguments have not begun, as in "new Foo<int[]>".
+    int angles = 0;
+    int parens = 0;
+    // True if the previous token ended the arguments of an instance creation.
+    boolean afterCreation = false;
+    while (depth > 0) {
+      lexer.next();
+      boolean endsCreation = false;
+      switch (lexer.token) {
+        case EOF:
+          return false;
+        case LBRACE:
+          if (afterCreation) {
+            declaresClass = true;
+          }
+          hasBlocks = true;
+          depth++;
+          break;
+        case RBRACE:
+          depth--;
+          break;
+        case SEMICOLON:
+          statements++;
+          break;
+        case LPAREN:
+          // Not the arguments of an annotation within type arguments, as in "new Foo<@A(1) Bar>".
+          if (!creations.isEmpty() && creations.peek() == -1 && angles <= 0) {
+            creations.pop();
+            creations.push(parens);
+          }
+          parens++;
+          break;
+        case LT:
+          angles++;
+          break;
+        case GT:
+          angles--;
+          break;
+        case RPAREN:
+          parens--;
+          if (!creations.isEmpty() && creations.peek() == parens) {
+            creations.pop();
+            endsCreation = true;
+          }
+          break;
+        case IDENTIFIER:
+          if (lexer.identifier.equals("new") && !previousWasColon) {
+            // An instance creation, not a constructor reference such as "Foo::new".
+            creations.push(-1);
+            angles = 0;
+          } else if (lexer.identifier.equals("class") && !previousWasDot
+              || lexer.identifier.equals("interface")
+              || lexer.identifier.equals("enum")
+              || "record".equals(previousIdentifier)) {
+            declaresClass = true;
+          }
+          break;
+        case LBRACKET:
+          // An array creation, such as "new int[] {1, 2}", has no class body.  A bracket within
+          // type arguments, as in "new Foo<int[]>() {...}", is not an array creation.
+          if (!creations.isEmpty() && creations.peek() == -1 && angles <= 0) {
+            creations.pop();
+          }
+          break;
+        default:
+          break;
+      }
+      afterCreation = endsCreation;
+      previousIdentifier = (lexer.token == Token.IDENTIFIER ? lexer.identifier : null);
+      previousWasDot = (lexer.token == Token.DOT);
+      previousWasColon = (lexer.token == Token.OTHER && lexer.firstChar() == ':');
+    }
+    boolean isPropertyBody = isPropertyCandidate && statements == 1 && !hasBlocks;
+    if (!(declaresClass && keepClasses) && !isPropertyBody) {
+      if (numBodies == bodies.length) {
+        bodies = Arrays.copyOf(bodies, numBodies * 2);
+      }
+      bodies[numBodies++] = open;
+      bodies[numBodies++] = lexer.start;
+    }
+    return true;
+  }
+
+  /** Erases the bodies recorded in {@link #bodies}. */
+  private void eraseBodies() {
+    char[] source = lexer.source;
+    for (int b = 0; b < numBodies; b += 2) {
+      int close = bodies[b + 1];
+      for (int i = bodies[b] + 1; i < close; i++) {
+        char c = source[i];
+        if (c != '\n' && c != '\r' && c != '\t' && c != '\f') {
+          source[i] = ' ';
+        }
+      }
+    }
+  }
+}
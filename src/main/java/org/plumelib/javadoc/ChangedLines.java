@@ -0,0 +1,290 @@
+package org.plumelib.javadoc;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * The lines of each file that a change touched, with an index that tells quickly whether a range of
+ * lines contains a changed line.
+ *
+ * <p>The lines are read either from a JSON object that maps each file name to an array of line
+ * numbers or of intervals of lines, as {@link LinesInChangedMethods} reads and writes, or from a
+ * unified diff, as printed by {@code git diff} or {@code diff -u}. In a diff, the changed lines are
+ * the added lines of the new version of each file; a deletion touches no line of the new version.
+ * File names are relative to a base directory, and {@code a/} and {@code b/} prefixes, as {@code
+ * git diff} prints, are removed.
+ *
+ * <p>A ChangedLines is immutable and thread-safe.
+ */
+final class ChangedLines {
+
+  /** Matches a hunk header, such as {@code @@ -1,5 +1,6 @@}; group 3 and 4 give the new lines. */
+  private static final Pattern HUNK_HEADER =
+      Pattern.compile("^@@ -(\\d+)(?:,(\\d+))? \\+(\\d+)(?:,(\\d+))? @@");
+
+  /** The changed lines of each file, by its absolute, normalized pathname. */
+  private final Map<Path, LineIndex> files;
+
+  /**
+   * Creates a new ChangedLines.
+   *
+   * @param files the changed lines of each file, by its absolute, normalized pathname
+   */
+  private ChangedLines(Map<Path, LineIndex> files) {
+    this.files = files;
+  }
+
+  /**
+   * Reads changed lines in either format. The format is determined by the first character that is
+   * not whitespace: a JSON object starts with a brace.
+   *
+   * @param reader the JSON object or unified diff; not closed
+   * @param base the directory against which relative file names are resolved
+   * @return the changed lines
+   * @throws IOException if the input cannot be read or is not well-formed
+   */
+  static ChangedLines read(Reader reader, Path base) throws IOException {
+    Map<String, BitSet> lines = readLines(reader);
+    Map<Path, LineIndex> files = new HashMap<>();
+    for (Map.Entry<String, BitSet> entry : lines.entrySet()) {
+      Path file = base.resolve(entry.getKey()).toAbsolutePath().normalize();
+      files.put(file, new LineIndex(entry.getValue()));
+    }
+    return new ChangedLines(files);
+  }
+
+  /**
+   * Reads changed lines in either format, as {@link #read} does, without resolving the file names.
+   * The input is read one line or one JSON token at a time, and the line numbers are never boxed,
+   * so a large diff takes little memory.
+   *
+   * @param reader the JSON object or unified diff; not closed
+   * @return the changed lines, by file name, in the order in which the files first appear
+   * @throws IOException if the input cannot be read or is not well-formed
+   */
+  static Map<String, BitSet> readLines(Reader reader) throws IOException {
+    BufferedReader in =
+        (reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader));
+    int first;
+    do {
+      in.mark(1);
+      first = in.read();
+    } while (first != -1 && Character.isWhitespace(first));
+    if (first != -1) {
+      in.reset();
+    }
+    return (first == '{' ? readJson(in) : readDiff(in));
+  }
+
+  /**
+   * Reads a JSON object that maps each file name to an array of line numbers. An element of an
+   * array may instead be an interval of lines, as an array of its first and last line, such as
+   * {@code [3,6]}, as {@code LinesInChangedMethods --ranges} writes.
+   *
+   * @param in the JSON object
+   * @return the changed lines, by file name
+   * @throws IOException if the input cannot be read or is not well-formed
+   */
+  static Map<String, BitSet> readJson(Reader in) throws IOException {
+    Map<String, BitSet> result = new LinkedHashMap<>();
+    JsonReader json = new JsonReader(in);
+    json.beginObject();
+    while (json.hasNext()) {
+      BitSet lines = result.computeIfAbsent(json.nextName(), name -> new BitSet());
+      json.beginArray();
+      while (json.hasNext()) {
+        if (json.peek() == JsonToken.BEGIN_ARRAY) {
+          json.beginArray();
+          int start = Math.max(json.nextInt(), 1);
+          int end = json.nextInt();
+          json.endArray();
+          if (start <= end) {
+            lines.set(start, end + 1);
+          }
+        } else {
+          int line = json.nextInt();
+          if (line > 0) {
+            lines.set(line);
+          }
+        }
+      }
+      json.endArray();
+    }
+    json.endObject();
+    return result;
+  }
+
+  /**
+   * Reads a unified diff, one line at a time.
+   *
+   * @param in the unified diff
+   * @return the added lines of the new version of each file, by file name
+   * @throws IOException if the input cannot be read
+   */
+  static Map<String, BitSet> readDiff(BufferedReader in) throws IOException {
+    Map<String, BitSet> result = new LinkedHashMap<>();
+    String oldName = null;
+    BitSet lines = null;
+    // The remaining lines of the current hunk, in the old and new versions of the file.
+    int oldRemaining = 0;
+    int newRemaining = 0;
+    int newLine = 0;
+    String line;
+    while ((line = in.readLine()) != null) {
+      if (oldRemaining > 0 || newRemaining > 0) {
+        char c = (line.isEmpty() ? ' ' : line.charAt(0));
+        if (c == '+') {
+          if (lines != null) {
+            lines.set(newLine);
+          }
+          newLine++;
+          newRemaining--;
+        } else if (c == '-') {
+          oldRemaining--;
+        } else if (c == ' ') {
+          newLine++;
+          oldRemaining--;
+          newRemaining--;
+        }
+        // Otherwise, a line such as "\\ No newline at end of file".
+        continue;
+      }
+      if (line.startsWith("--- ")) {
+        oldName = fileName(line);
+      } else if (line.startsWith("+++ ")) {
+        String newName = fileName(line);
+        if (newName.equals("/dev/null")) {
+          lines = null;
+        } else {
+          if (newName.startsWith("b/")
+              && oldName != null
+              && (oldName.startsWith("a/") || oldName.equals("/dev/null"))) {
+            newName = newName.substring(2);
+          }
+          lines = result.computeIfAbsent(newName, name -> new BitSet());
+        }
+      } else if (line.startsWith("@@")) {
+        Matcher m = HUNK_HEADER.matcher(line);
+        if (m.find()) {
+          oldRemaining = count(m.group(2));
+          newLine = Integer.parseInt(m.group(3));
+          newRemaining = count(m.group(4));
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the file name in a {@code ---} or {@code +++} line of a unified diff.
+   *
+   * @param line a line that starts with {@code ---} or {@code +++} and a space
+   * @return the file name, without any timestamp that follows it
+   */
+  private static String fileName(String line) {
+    String name = line.substring(4);
+    int tab = name.indexOf('\t');
+    return (tab == -1 ? name : name.substring(0, tab));
+  }
+
+  /**
+   * Returns the number of lines in a hunk header's range.
+   *
+   * @param count the count in a hunk header, or null if it was omitted
+   * @return the number of lines
+   */
+  private static int count(@Nullable String count) {
+    return (count == null ? 1 : Integer.parseInt(count));
+  }
+
+  /**
+   * Returns the changed lines of the given file.
+   *
+   * @param file a file
+   * @return the changed lines of the file, or null if none of its lines changed
+   */
+  @Nullable LineIndex get(Path file) {
+    LineIndex result = files.get(file.toAbsolutePath().normalize());
+    return (result == null || result.isEmpty() ? null : result);
+  }
+
+  /**
+   * The changed lines of one file, as sorted, disjoint intervals, so that whether a range of lines
+   * contains a changed line is found by binary search.
+   */
+  static final class LineIndex {
+
+    /** The first line of each interval, in increasing order. */
+    private final int[] starts;
+
+    /** The last line of each interval. */
+    private final int[] ends;
+
+    /**
+     * Creates a new LineIndex.
+     *
+     * @param lines the changed lines
+     */
+    LineIndex(BitSet lines) {
+      int[] starts = new int[8];
+      int[] ends = new int[8];
+      int size = 0;
+      for (int start = lines.nextSetBit(0); start >= 0; ) {
+        int end = lines.nextClearBit(start);
+        if (size == starts.length) {
+          starts = Arrays.copyOf(starts, size * 2);
+          ends = Arrays.copyOf(ends, size * 2);
+        }
+        starts[size] = start;
+        ends[size] = end - 1;
+        size++;
+        start = lines.nextSetBit(end);
+      }
+      this.starts = Arrays.copyOf(starts, size);
+      this.ends = Arrays.copyOf(ends, size);
+    }
+
+    /**
+     * Returns true if no line changed.
+     *
+     * @return true if no line changed
+     */
+    boolean isEmpty() {
+      return starts.length == 0;
+    }
+
+    /**
+     * Returns true if a line in the given range changed.
+     *
+     * @param first the first line of the range
+     * @param last the last line of the range
+     * @return true if a line from {@code first} to {@code last}, inclusive, changed
+     */
+    boolean intersects(int first, int last) {
+      // Find the first interval that ends at or after the first line.
+      int low = 0;
+      int high = ends.length;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (ends[mid] < first) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low < starts.length && starts[low] <= last;
+    }
+  }
+}
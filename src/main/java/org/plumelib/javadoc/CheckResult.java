@@ -0,0 +1,64 @@
+package org.plumelib.javadoc;
+
+import java.util.Collections;
+import java.util.List;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/** The result of {@link Checker#check}: the errors that were found, and any problem. Immutable. */
+public final class CheckResult {
+
+  /** The errors, in the order the command-line program prints them. */
+  private final List<Diagnostic> diagnostics;
+
+  /** The problem that prevented checking the files, or null if there was none. */
+  private final @Nullable Problem problem;
+
+  /**
+   * Creates a new CheckResult.
+   *
+   * @param diagnostics the errors, in the order the command-line program prints them
+   * @param problem the problem that prevented checking the files, or null if there was none
+   */
+  CheckResult(List<Diagnostic> diagnostics, @Nullable Problem problem) {
+    this.diagnostics = Collections.unmodifiableList(diagnostics);
+    this.problem = problem;
+  }
+
+  /**
+   * Returns the errors, in the order the command-line program prints them. If there was a problem,
+   * they are the errors that were found before it.
+   *
+   * @return the errors
+   */
+  public List<Diagnostic> getDiagnostics() {
+    return diagnostics;
+  }
+
+  /**
+   * Returns the problem that prevented checking the files, or null if there was none.
+   *
+   * @return the problem that prevented checking the files, or null
+   */
+  public @Nullable Problem getProblem() {
+    return problem;
+  }
+
+  /**
+   * Returns true if the files were checked and no errors were found.
+   *
+   * @return true if the files were checked and no errors were found
+   */
+  public boolean isSuccess() {
+    return problem == null && diagnostics.isEmpty();
+  }
+
+  /**
+   * Returns the exit status of the command-line program: 0 if there were no errors, 1 if there were
+   * errors, 2 if there was a problem.
+   *
+   * @return the exit status of the command-line program
+   */
+  public int getExitStatus() {
+    return (problem != null ? 2 : diagnostics.isEmpty() ? 0 : 1);
+  }
+}
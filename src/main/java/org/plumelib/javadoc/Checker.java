@@ -0,0 +1,552 @@
+package org.plumelib.javadoc;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.regex.Pattern;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Checks Java files for missing Javadoc comments, for use within another program such as a build
+ * tool. It does what the {@link RequireJavadoc} command-line program does, but it returns the
+ * errors instead of printing them, and it never exits the JVM.
+ *
+ * <p>A Checker is immutable and thread-safe: {@link #check} may be called many times, from many
+ * threads at once. All Checkers share the threads that check files, so a parser is configured once
+ * per thread rather than once per check. Create one with {@link #builder}:
+ *
+ * <pre>{@code
+ * Checker checker = Checker.builder().dontRequirePrivate(true).jobs(0).build();
+ * CheckResult result = checker.check(Collections.singletonList(Paths.get("src/main/java")));
+ * for (Diagnostic d : result.getDiagnostics()) {
+ *   System.out.println(d);
+ * }
+ * }</pre>
+ */
+public final class Checker {
+
+  /** How long a thread that checks files is kept when no check is running, in seconds. */
+  private static final long WORKER_KEEP_ALIVE_SECONDS = 10 * 60;
+
+  /** The threads that check files, shared by all checks. */
+  private static final ExecutorService workers =
+      RequireJavadoc.newWorkerPool(WORKER_KEEP_ALIVE_SECONDS);
+
+  /** See {@link Builder#since}. */
+  private final @Nullable String since;
+
+  /** See {@link Builder#changedLines}. */
+  private final @Nullable Path changedLines;
+
+  /** See {@link Builder#exclude}. */
+  private final @Nullable Pattern exclude;
+
+  /** See {@link Builder#excludeGlobs}. */
+  private final List<String> excludeGlobs;
+
+  /** See {@link Builder#useGitignore}. */
+  private final boolean useGitignore;
+
+  /** See {@link Builder#dontRequire}. */
+  private final @Nullable Pattern dontRequire;
+
+  /** See {@link Builder#dontRequirePrivate}. */
+  private final boolean dontRequirePrivate;
+
+  /** See {@link Builder#dontRequireNoargConstructor}. */
+  private final boolean dontRequireNoargConstructor;
+
+  /** See {@link Builder#dontRequireTrivialProperties}. */
+  private final boolean dontRequireTrivialProperties;
+
+  /** See {@link Builder#dontRequireType}. */
+  private final boolean dontRequireType;
+
+  /** See {@link Builder#dontRequireField}. */
+  private final boolean dontRequireField;
+
+  /** See {@link Builder#dontRequireMethod}. */
+  private final boolean dontRequireMethod;
+
+  /** See {@link Builder#dontRequireLocalClass}. */
+  private final boolean dontRequireLocalClass;
+
+  /** See {@link Builder#requirePackageInfo}. */
+  private final boolean requirePackageInfo;
+
+  /** See {@link Builder#relative}. */
+  private final boolean relative;
+
+  /** See {@link Builder#skipMethodBodies}. */
+  private final boolean skipMethodBodies;
+
+  /** See {@link Builder#fastScan}. */
+  private final boolean fastScan;
+
+  /** See {@link Builder#jobs}. */
+  private final int jobs;
+
+  /** See {@link Builder#maxErrors}. */
+  private final int maxErrors;
+
+  /** See {@link Builder#cacheFile}. */
+  private final @Nullable Path cacheFile;
+
+  /** See {@link Builder#cacheDir}. */
+  private final @Nullable Path cacheDir;
+
+  /** See {@link Builder#cacheDirMaxBytes}. */
+  private final long cacheDirMaxBytes;
+
+  /** See {@link Builder#workingDirectory}. */
+  private final Path workingDirectory;
+
+  /**
+   * Creates a new Checker.
+   *
+   * @param builder the option values
+   */
+  private Checker(Builder builder) {
+    this.since = builder.since;
+    this.changedLines = builder.changedLines;
+    this.exclude = builder.exclude;
+    this.excludeGlobs = new ArrayList<>(builder.excludeGlobs);
+    this.useGitignore = builder.useGitignore;
+    this.dontRequire = builder.dontRequire;
+    this.dontRequirePrivate = builder.dontRequirePrivate;
+    this.dontRequireNoargConstructor = builder.dontRequireNoargConstructor;
+    this.dontRequireTrivialProperties = builder.dontRequireTrivialProperties;
+    this.dontRequireType = builder.dontRequireType;
+    this.dontRequireField = builder.dontRequireField;
+    this.dontRequireMethod = builder.dontRequireMethod;
+    this.dontRequireLocalClass = builder.dontRequireLocalClass;
+    this.requirePackageInfo = builder.requirePackageInfo;
+    this.relative = builder.relative;
+    this.skipMethodBodies = builder.skipMethodBodies;
+    this.fastScan = builder.fastScan;
+    this.jobs = builder.jobs;
+    this.maxErrors = builder.maxErrors;
+    this.cacheFile = builder.cacheFile;
+    this.cacheDir = builder.cacheDir;
+    this.cacheDirMaxBytes = builder.cacheDirMaxBytes;
+    this.workingDirectory = builder.workingDirectory;
+  }
+
+  /**
+   * Returns a new builder, whose options have the same defaults as the command-line program's.
+   *
+   * @return a new builder
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Checks the given Java files, and the Java files in or under the given directories. If {@code
+   * files} is empty, checks the Java files in or under the working directory.
+   *
+   * @param files the directories and files to check
+   * @return the errors that were found, and the problem that prevented checking the files, if any
+   */
+  public CheckResult check(Collection<Path> files) {
+    String[] args = new String[files.size()];
+    int i = 0;
+    for (Path file : files) {
+      args[i++] = file.toString();
+    }
+
+    // A RequireJavadoc holds the state of one run, so each check uses a new one.
+    RequireJavadoc rj = new RequireJavadoc();
+    if (since != null) {
+      rj.since = since;
+    }
+    if (changedLines != null) {
+      rj.changed_lines = changedLines.toString();
+    }
+    if (exclude != null) {
+      rj.exclude = exclude;
+    }
+    rj.exclude_glob = new ArrayList<>(excludeGlobs);
+    rj.use_gitignore = useGitignore;
+    if (dontRequire != null) {
+      rj.dont_require = dontRequire;
+    }
+    rj.dont_require_private = dontRequirePrivate;
+    rj.dont_require_noarg_constructor = dontRequireNoargConstructor;
+    rj.dont_require_trivial_properties = dontRequireTrivialProperties;
+    rj.dont_require_type = dontRequireType;
+    rj.dont_require_field = dontRequireField;
+    rj.dont_require_method = dontRequireMethod;
+    rj.dont_require_local_class = dontRequireLocalClass;
+    rj.require_package_info = requirePackageInfo;
+    rj.relative = relative;
+    rj.skip_method_bodies = skipMethodBodies;
+    rj.fast_scan = fastScan;
+    rj.jobs = jobs;
+    rj.max_errors = maxErrors;
+    if (cacheFile != null) {
+      rj.cache_file = cacheFile.toString();
+    }
+    if (cacheDir != null) {
+      rj.cache_dir = cacheDir.toString();
+    }
+    rj.cache_dir_max_bytes = cacheDirMaxBytes;
+    rj.setWorkingDirectory(workingDirectory);
+    rj.setWorkers(workers);
+    return rj.checkQuietly(args);
+  }
+
+  /**
+   * A builder for a {@link Checker}. Each method corresponds to a command-line option; see the
+   * README.md file.
+   */
+  public static final class Builder {
+
+    /** See {@link #since}. */
+    private @Nullable String since = null;
+
+    /** See {@link #changedLines}. */
+    private @Nullable Path changedLines = null;
+
+    /** See {@link #exclude}. */
+    private @Nullable Pattern exclude = null;
+
+    /** See {@link #excludeGlobs}. */
+    private List<String> excludeGlobs = new ArrayList<>();
+
+    /** See {@link #useGitignore}. */
+    private boolean useGitignore = false;
+
+    /** See {@link #dontRequire}. */
+    private @Nullable Pattern dontRequire = null;
+
+    /** See {@link #dontRequirePrivate}. */
+    private boolean dontRequirePrivate = false;
+
+    /** See {@link #dontRequireNoargConstructor}. */
+    private boolean dontRequireNoargConstructor = false;
+
+    /** See {@link #dontRequireTrivialProperties}. */
+    private boolean dontRequireTrivialProperties = false;
+
+    /** See {@link #dontRequireType}. */
+    private boolean dontRequireType = false;
+
+    /** See {@link #dontRequireField}. */
+    private boolean dontRequireField = false;
+
+    /** See {@link #dontRequireMethod}. */
+    private boolean dontRequireMethod = false;
+
+    /** See {@link #dontRequireLocalClass}. */
+    private boolean dontRequireLocalClass = false;
+
+    /** See {@link #requirePackageInfo}. */
+    private boolean requirePackageInfo = false;
+
+    /** See {@link #relative}. */
+    private boolean relative = false;
+
+    /** See {@link #skipMethodBodies}. */
+    private boolean skipMethodBodies = false;
+
+    /** See {@link #fastScan}. */
+    private boolean fastScan = false;
+
+    /** See {@link #jobs}. */
+    private int jobs = 1;
+
+    /** See {@link #maxErrors}. */
+    private int maxErrors = 0;
+
+    /** See {@link #cacheFile}. */
+    private @Nullable Path cacheFile = null;
+
+    /** See {@link #cacheDir}. */
+    private @Nullable Path cacheDir = null;
+
+    /** See {@link #cacheDirMaxBytes}. */
+    private long cacheDirMaxBytes = 1L << 30;
+
+    /** See {@link #workingDirectory}. */
+    private Path workingDirectory = Paths.get("").toAbsolutePath();
+
+    /** Creates a new Builder. */
+    private Builder() {}
+
+    /**
+     * Check only the files that have changed since the merge base of the git ref and {@code HEAD},
+     * including staged, unstaged, and untracked files.
+     *
+     * @param since a git ref, such as {@code origin/main}, or null to check all files
+     * @return this builder
+     */
+    public Builder since(@Nullable String since) {
+      this.since = since;
+      return this;
+    }
+
+    /**
+     * Check only the files with a changed line, and report only the declarations that contain a
+     * changed line.
+     *
+     * @param changedLines a unified diff, or a JSON object that maps each file name to an array of
+     *     line numbers; or null to report all declarations
+     * @return this builder
+     */
+    public Builder changedLines(@Nullable Path changedLines) {
+      this.changedLines = changedLines;
+      return this;
+    }
+
+    /**
+     * Don't check files or directories whose pathname matches the regex.
+     *
+     * @param exclude the regex, or null to check all files
+     * @return this builder
+     */
+    public Builder exclude(@Nullable Pattern exclude) {
+      this.exclude = exclude;
+      return this;
+    }
+
+    /**
+     * Don't check files or directories that match any of the globs, which have the syntax of the
+     * lines of a .gitignore file. They are matched against pathnames relative to each directory
+     * that is checked, and against the name of each file that is checked.
+     *
+     * @param excludeGlobs the globs
+     * @return this builder
+     */
+    public Builder excludeGlobs(Collection<String> excludeGlobs) {
+      this.excludeGlobs = new ArrayList<>(excludeGlobs);
+      return this;
+    }
+
+    /**
+     * Don't check files or directories that a .gitignore file ignores.
+     *
+     * @param useGitignore true to honor .gitignore files
+     * @return this builder
+     */
+    public Builder useGitignore(boolean useGitignore) {
+      this.useGitignore = useGitignore;
+      return this;
+    }
+
+    /**
+     * Don't report problems in Java elements whose simple name, or full package name, matches the
+     * regex.
+     *
+     * @param dontRequire the regex, or null to check all elements
+     * @return this builder
+     */
+    public Builder dontRequire(@Nullable Pattern dontRequire) {
+      this.dontRequire = dontRequire;
+      return this;
+    }
+
+    /**
+     * Don't report problems in elements with private access.
+     *
+     * @param dontRequirePrivate true to not report problems in private elements
+     * @return this builder
+     */
+    public Builder dontRequirePrivate(boolean dontRequirePrivate) {
+      this.dontRequirePrivate = dontRequirePrivate;
+      return this;
+    }
+
+    /**
+     * Don't report problems in constructors with zero formal parameters.
+     *
+     * @param dontRequireNoargConstructor true to not report problems in no-argument constructors
+     * @return this builder
+     */
+    public Builder dontRequireNoargConstructor(boolean dontRequireNoargConstructor) {
+      this.dontRequireNoargConstructor = dontRequireNoargConstructor;
+      return this;
+    }
+
+    /**
+     * Don't report problems in trivial getters and setters.
+     *
+     * @param dontRequireTrivialProperties true to not report problems in trivial getters and
+     *     setters
+     * @return this builder
+     */
+    public Builder dontRequireTrivialProperties(boolean dontRequireTrivialProperties) {
+      this.dontRequireTrivialProperties = dontRequireTrivialProperties;
+      return this;
+    }
+
+    /**
+     * Don't report problems in type declarations.
+     *
+     * @param dontRequireType true to not report problems in type declarations
+     * @return this builder
+     */
+    public Builder dontRequireType(boolean dontRequireType) {
+      this.dontRequireType = dontRequireType;
+      return this;
+    }
+
+    /**
+     * Don't report problems in fields.
+     *
+     * @param dontRequireField true to not report problems in fields
+     * @return this builder
+     */
+    public Builder dontRequireField(boolean dontRequireField) {
+      this.dontRequireField = dontRequireField;
+      return this;
+    }
+
+    /**
+     * Don't report problems in methods, constructors, and annotation members.
+     *
+     * @param dontRequireMethod true to not report problems in methods and constructors
+     * @return this builder
+     */
+    public Builder dontRequireMethod(boolean dontRequireMethod) {
+      this.dontRequireMethod = dontRequireMethod;
+      return this;
+    }
+
+    /**
+     * Don't report problems in local and anonymous classes.
+     *
+     * @param dontRequireLocalClass true to not report problems in local and anonymous classes
+     * @return this builder
+     */
+    public Builder dontRequireLocalClass(boolean dontRequireLocalClass) {
+      this.dontRequireLocalClass = dontRequireLocalClass;
+      return this;
+    }
+
+    /**
+     * Require each package to have a package-info.java file.
+     *
+     * @param requirePackageInfo true to require package-info.java files
+     * @return this builder
+     */
+    public Builder requirePackageInfo(boolean requirePackageInfo) {
+      this.requirePackageInfo = requirePackageInfo;
+      return this;
+    }
+
+    /**
+     * Report file names relative to the working directory.
+     *
+     * @param relative true to report relative file names
+     * @return this builder
+     */
+    public Builder relative(boolean relative) {
+      this.relative = relative;
+      return this;
+    }
+
+    /**
+     * Don't parse the bodies of methods, constructors, and initializers, when that does not change
+     * the errors. This is faster, but syntax errors within the bodies are not reported.
+     *
+     * @param skipMethodBodies true to not parse method bodies
+     * @return this builder
+     */
+    public Builder skipMethodBodies(boolean skipMethodBodies) {
+      this.skipMethodBodies = skipMethodBodies;
+      return this;
+    }
+
+    /**
+     * Find declarations with a lexical scanner, and parse only the files that it cannot handle.
+     * This is much faster, but most syntax errors are not reported.
+     *
+     * @param fastScan true to find declarations without parsing when possible
+     * @return this builder
+     */
+    public Builder fastScan(boolean fastScan) {
+      this.fastScan = fastScan;
+      return this;
+    }
+
+    /**
+     * Check this many files concurrently; 0 means one per processor.
+     *
+     * @param jobs the number of files to check concurrently
+     * @return this builder
+     */
+    public Builder jobs(int jobs) {
+      this.jobs = jobs;
+      return this;
+    }
+
+    /**
+     * Stop after finding this many errors; 0 means no limit.
+     *
+     * @param maxErrors the maximum number of errors to find
+     * @return this builder
+     */
+    public Builder maxErrors(int maxErrors) {
+      this.maxErrors = maxErrors;
+      return this;
+    }
+
+    /**
+     * Record the errors in each file in the given file, so unchanged files are not parsed again.
+     *
+     * @param cacheFile the cache file, or null for none
+     * @return this builder
+     */
+    public Builder cacheFile(@Nullable Path cacheFile) {
+      this.cacheFile = cacheFile;
+      return this;
+    }
+
+    /**
+     * Record the errors in files by their contents in the given directory, which may be shared.
+     *
+     * @param cacheDir the cache directory, or null for none
+     * @return this builder
+     */
+    public Builder cacheDir(@Nullable Path cacheDir) {
+      this.cacheDir = cacheDir;
+      return this;
+    }
+
+    /**
+     * Limit the size of the cache directory to this many bytes; 0 means no limit.
+     *
+     * @param cacheDirMaxBytes the maximum size of the cache directory
+     * @return this builder
+     */
+    public Builder cacheDirMaxBytes(long cacheDirMaxBytes) {
+      this.cacheDirMaxBytes = cacheDirMaxBytes;
+      return this;
+    }
+
+    /**
+     * Resolve relative pathnames against the given directory, rather than against the current
+     * directory of this process.
+     *
+     * @param workingDirectory the directory against which relative pathnames are resolved
+     * @return this builder
+     */
+    public Builder workingDirectory(Path workingDirectory) {
+      this.workingDirectory = workingDirectory.toAbsolutePath();
+      return this;
+    }
+
+    /**
+     * Returns a Checker with the options of this builder.
+     *
+     * @return a Checker with the options of this builder
+     */
+    public Checker build() {
+      return new Checker(this);
+    }
+  }
+}
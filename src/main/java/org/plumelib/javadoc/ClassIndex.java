@@ -0,0 +1,209 @@
+package org.plumelib.javadoc;
+
+import com.github.javaparser.JavaToken;
+import com.github.javaparser.Position;
+import com.github.javaparser.Range;
+import com.github.javaparser.TokenRange;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Optional;
+import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
+
+/**
+ * An index of the places in one compilation unit where a class might be declared: the keywords
+ * {@code class}, {@code interface}, {@code enum}, and {@code record}, and the opening brace of the
+ * body of an anonymous class. It lets the visitor skip a method body, initializer, or field
+ * initializer that declares no local or anonymous class, without walking the statements and
+ * expressions in it.
+ *
+ * <p>The index is built from the tokens of the compilation unit the first time it is queried. It
+ * may contain places where no class is declared, such as a variable named {@code record}, but it
+ * contains every place where one is.
+ *
+ * <p>A ClassIndex is not thread-safe. Use one per compilation unit.
+ */
+final class ClassIndex {
+
+  /** The kind of the {@code class} keyword. */
+  private static final int CLASS = JavaToken.Kind.CLASS.getKind();
+
+  /** The kind of the {@code interface} keyword. */
+  private static final int INTERFACE = JavaToken.Kind.INTERFACE.getKind();
+
+  /** The kind of the {@code enum} keyword. */
+  private static final int ENUM = JavaToken.Kind.ENUM.getKind();
+
+  /** The kind of the {@code record} restricted identifier. */
+  private static final int RECORD = JavaToken.Kind.RECORD.getKind();
+
+  /** The kind of the {@code new} keyword. */
+  private static final int NEW = JavaToken.Kind.NEW.getKind();
+
+  /** The kind of an opening parenthesis. */
+  private static final int LPAREN = JavaToken.Kind.LPAREN.getKind();
+
+  /** The kind of a closing parenthesis. */
+  private static final int RPAREN = JavaToken.Kind.RPAREN.getKind();
+
+  /** The kind of an opening bracket. */
+  private static final int LBRACKET = JavaToken.Kind.LBRACKET.getKind();
+
+  /** The kind of {@code <}. */
+  private static final int LT = JavaToken.Kind.LT.getKind();
+
+  /** The kind of {@code >}. */
+  private static final int GT = JavaToken.Kind.GT.getKind();
+
+  /** The kind of {@code >>}. */
+  private static final int RSIGNEDSHIFT = JavaToken.Kind.RSIGNEDSHIFT.getKind();
+
+  /** The kind of {@code >>>}. */
+  private static final int RUNSIGNEDSHIFT = JavaToken.Kind.RUNSIGNEDSHIFT.getKind();
+
+  /** The kind of an opening brace. */
+  private static final int LBRACE = JavaToken.Kind.LBRACE.getKind();
+
+  /** The kind of a period. */
+  private static final int DOT = JavaToken.Kind.DOT.getKind();
+
+  /** The kind of {@code ::}. */
+  private static final int DOUBLECOLON = JavaToken.Kind.DOUBLECOLON.getKind();
+
+  /**
+   * The sorted positions (see {@link #key}) where a class might be declared, or null if the index
+   * has not been built yet.
+   */
+  private long @MonotonicNonNull [] places = null;
+
+  /** Creates a new, empty ClassIndex. */
+  ClassIndex() {}
+
+  /**
+   * Returns true if a local or anonymous class might be declared within the given node.
+   *
+   * @param node a node
+   * @return false if no class is declared within the node
+   */
+  boolean mayDeclareClass(Node node) {
+    Optional<Range> range = node.getRange();
+    if (!range.isPresent()) {
+      return true;
+    }
+    if (places == null) {
+      Optional<TokenRange> tokens =
+          node.findCompilationUnit().flatMap(CompilationUnit::getTokenRange);
+      if (!tokens.isPresent()) {
+        return true;
+      }
+      places = findPlaces(tokens.get());
+    }
+    long begin = key(range.get().begin);
+    long end = key(range.get().end);
+    int low = 0;
+    int high = places.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (places[mid] < begin) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low < places.length && places[low] <= end;
+  }
+
+  /**
+   * Returns a number that orders positions the way {@link Position#compareTo} does.
+   *
+   * @param position a position in a file
+   * @return a key for the position
+   */
+  private static long key(Position position) {
+    return ((long) position.line << 32) | (position.column & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Returns the positions where a class might be declared, in increasing order.
+   *
+   * @param tokens the tokens of a compilation unit
+   * @return the positions (see {@link #key}) where a class might be declared
+   */
+  private static long[] findPlaces(TokenRange tokens) {
+    long[] result = new long[16];
+    int size = 0;
+    int parens = 0;
+    // The parenthesis depths at which the arguments of pending instance creations begin; -1 for
+    // one whose arguments have not begun yet.
+    Deque<Integer> creations = new ArrayDeque<>();
+    // The depth of type arguments in the type of the innermost pending instance creation whose
+    // arguments have not begun, as in "new Foo<int[]>".
+    int angles = 0;
+    // True if the previous token ended the arguments of an instance creation.
+    boolean afterCreation = false;
+    int previousKind = -1;
+    for (JavaToken token : tokens) {
+      if (token.getCategory().isWhitespaceOrComment()) {
+        continue;
+      }
+      int kind = token.getKind();
+      boolean endsCreation = false;
+      boolean isPlace = false;
+      if (kind == CLASS) {
+        // Not a class literal, such as "Foo.class".
+        isPlace = (previousKind != DOT);
+      } else if (kind == INTERFACE || kind == ENUM || kind == RECORD) {
+        isPlace = true;
+      } else if (kind == NEW) {
+        // An instance creation, not a constructor reference such as "Foo::new".
+        if (previousKind != DOUBLECOLON) {
+          creations.push(-1);
+          angles = 0;
+        }
+      } else if (kind == LT) {
+        angles++;
+      } else if (kind == GT) {
+        angles--;
+      } else if (kind == RSIGNEDSHIFT) {
+        angles -= 2;
+      } else if (kind == RUNSIGNEDSHIFT) {
+        angles -= 3;
+      } else if (kind == LPAREN) {
+        // Not the arguments of an annotation within type arguments, as in "new Foo<@A(1) Bar>".
+        if (!creations.isEmpty() && creations.peek() == -1 && angles <= 0) {
+          creations.pop();
+          creations.push(parens);
+        }
+        parens++;
+      } else if (kind == RPAREN) {
+        parens--;
+        if (!creations.isEmpty() && creations.peek() == parens) {
+          creations.pop();
+          endsCreation = true;
+        }
+      } else if (kind == LBRACKET) {
+        // An array creation, such as "new int[] {1, 2}", has no class body.  A bracket within type
+        // arguments, as in "new Foo<int[]>() {...}", is not an array creation.
+        if (!creations.isEmpty() && creations.peek() == -1 && angles <= 0) {
+          creations.pop();
+        }
+      } else if (kind == LBRACE) {
+        isPlace = afterCreation;
+      }
+      if (isPlace) {
+        Optional<Range> range = token.getRange();
+        if (range.isPresent()) {
+          if (size == result.length) {
+            result = Arrays.copyOf(result, size * 2);
+          }
+          result[size++] = key(range.get().begin);
+        }
+      }
+      afterCreation = endsCreation;
+      previousKind = kind;
+    }
+    return Arrays.copyOf(result, size);
+  }
+}
@@ -0,0 +1,154 @@
+package org.plumelib.javadoc;
+
+import com.github.javaparser.Position;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.comments.Comment;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * An index of the orphan Javadoc comments in one compilation unit. An orphan comment is one that
+ * JavaParser did not attach to the following node; for example, in
+ *
+ * <pre>{@code
+ * /** ... *}{@code /
+ * // text 1
+ * // text 2
+ * void m() { ... }
+ * }</pre>
+ *
+ * <p>the Javadoc comment and {@code // text 1} are orphan comments, and only {@code // text 2} is
+ * associated with the method.
+ *
+ * <p>The orphan comments before a node are the comments among its siblings that lie between it and
+ * the preceding sibling that is not a comment. The index sorts the siblings of a node once, the
+ * first time any of them is queried, so finding the orphan comments before each of the n members of
+ * a class takes O(log n) rather than O(n log n) time.
+ *
+ * <p>A CommentIndex is not thread-safe. Use one per compilation unit.
+ */
+final class CommentIndex {
+
+  /** The siblings of every node that has been queried, indexed by their parent. */
+  private final Map<Node, Siblings> siblingsByParent = new IdentityHashMap<>();
+
+  /** Creates a new, empty CommentIndex. */
+  CommentIndex() {}
+
+  /**
+   * Returns true if an orphan Javadoc comment precedes the given node, between it and its previous
+   * sibling.
+   *
+   * @param node a node
+   * @return true if an orphan Javadoc comment precedes the given node
+   */
+  boolean hasOrphanJavadocBefore(Node node) {
+    if (node instanceof Comment) {
+      return false;
+    }
+    Node parent = node.getParentNode().orElse(null);
+    if (parent == null) {
+      return false;
+    }
+    Optional<Position> begin = node.getBegin();
+    if (!begin.isPresent()) {
+      return false;
+    }
+    Siblings siblings = siblingsByParent.get(parent);
+    if (siblings == null) {
+      siblings = new Siblings(parent.getChildNodes());
+      siblingsByParent.put(parent, siblings);
+    }
+    return siblings.hasJavadocBefore(key(begin.get()));
+  }
+
+  /**
+   * Returns a number that orders positions the way {@link Position#compareTo} does.
+   *
+   * @param position a position in a file
+   * @return a key for the position
+   */
+  private static long key(Position position) {
+    return ((long) position.line << 32) | (position.column & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Returns the index of the first element of the sorted array that is greater than or equal to (if
+   * {@code inclusive}) or greater than (otherwise) the key.
+   *
+   * @param a a sorted array
+   * @param key the value to search for
+   * @param inclusive whether an element equal to the key counts
+   * @return the index of the first element at or after the key; {@code a.length} if there is none
+   */
+  private static int search(long[] a, long key, boolean inclusive) {
+    int low = 0;
+    int high = a.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (a[mid] < key || (!inclusive && a[mid] == key)) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /** The positions of the children of one node, split into declarations and Javadoc comments. */
+  private static final class Siblings {
+
+    /** The sorted begin positions (see {@link #key}) of the children that are not comments. */
+    private final long[] nonComments;
+
+    /** The sorted begin positions (see {@link #key}) of the children that are Javadoc comments. */
+    private final long[] javadocs;
+
+    /**
+     * Creates a new Siblings.
+     *
+     * @param children the children of a node
+     */
+    Siblings(List<Node> children) {
+      long[] nonComments = new long[children.size()];
+      long[] javadocs = new long[children.size()];
+      int numNonComments = 0;
+      int numJavadocs = 0;
+      for (Node child : children) {
+        Optional<Position> begin = child.getBegin();
+        if (!begin.isPresent()) {
+          continue;
+        }
+        if (!(child instanceof Comment)) {
+          nonComments[numNonComments++] = key(begin.get());
+        } else if (((Comment) child).isJavadocComment()) {
+          javadocs[numJavadocs++] = key(begin.get());
+        }
+      }
+      this.nonComments = Arrays.copyOf(nonComments, numNonComments);
+      this.javadocs = Arrays.copyOf(javadocs, numJavadocs);
+      Arrays.sort(this.nonComments);
+      Arrays.sort(this.javadocs);
+    }
+
+    /**
+     * Returns true if a Javadoc comment lies between the child that begins at the given position
+     * and the previous child that is not a comment.
+     *
+     * @param child the begin position (see {@link #key}) of a child that is not a comment
+     * @return true if a Javadoc comment immediately precedes the child
+     */
+    boolean hasJavadocBefore(long child) {
+      if (javadocs.length == 0) {
+        return false;
+      }
+      int i = search(nonComments, child, true);
+      long previous = (i == 0 ? Long.MIN_VALUE : nonComments[i - 1]);
+      int j = search(javadocs, previous, false);
+      return j < javadocs.length && javadocs[j] < child;
+    }
+  }
+}
@@ -0,0 +1,1160 @@
+package org.plumelib.javadoc;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.plumelib.javadoc.JavaLexer.Token;
+import org.plumelib.javadoc.RequireJavadoc.PropertyKind;
+
+/**
+ * Finds the errors in a Java file without parsing it: a hand-written scanner finds the declarations
+ * of types, methods, constructors, fields, enum constants, and annotation members, and whether a
+ * Javadoc comment precedes each. The errors are the same as those of {@code RequireJavadocVisitor},
+ * which visits the file's JavaParser AST, but finding them takes a small fraction of the time.
+ *
+ * <p>The scanner gives up, and the file must be parsed instead, if it contains a construct that the
+ * scanner cannot classify confidently. Examples are local and anonymous classes (unless they are
+ * exempt), module declarations, Unicode escapes outside literals, and anything that is not valid
+ * Java. Apart from that, the scanner does not check syntax: it does not look inside method bodies
+ * and initializers, so unlike JavaParser it does not report most syntax errors.
+ */
+final class DeclarationScanner {
+
+  /** The modifiers that may precede a declaration, other than {@code non-sealed}. */
+  private static final Set<String> MODIFIERS =
+      new HashSet<>(
+          Arrays.asList(
+              "public",
+              "protected",
+              "private",
+              "static",
+              "final",
+              "abstract",
+              "native",
+              "synchronized",
+              "transient",
+              "volatile",
+              "strictfp",
+              "default",
+              "sealed"));
+
+  /** The keywords that are expressions, and so cannot be the name of a variable. */
+  private static final Set<String> KEYWORD_EXPRESSIONS =
+      new HashSet<>(Arrays.asList("this", "super", "null", "true", "false"));
+
+  /**
+   * The maximum number of tokens of a method body that are kept to determine whether the method is
+   * a trivial getter or setter. Longer bodies are not trivial.
+   */
+  private static final int MAX_PROPERTY_BODY_TOKENS = 16;
+
+  /** Thrown when the scanner meets a construct that it cannot classify confidently. */
+  private static final class UnclassifiableException extends Exception {
+
+    /** Unique identifier for serialization. If you add or remove fields, change this number. */
+    private static final long serialVersionUID = 20241021L;
+
+    /** Creates a new UnclassifiableException, without a stack trace. */
+    UnclassifiableException() {
+      super(null, null, false, false);
+    }
+  }
+
+  /** The only UnclassifiableException. It has no state, so it is reused. */
+  private static final UnclassifiableException UNCLASSIFIABLE = new UnclassifiableException();
+
+  /** The kinds of type declarations. */
+  private enum Kind {
+    /** A class or interface. */
+    CLASS,
+    /** An enum. */
+    ENUM,
+    /** A record. */
+    RECORD,
+    /** An annotation type. */
+    ANNOTATION
+  }
+
+  /** The program whose options determine which errors are reported. */
+  private final RequireJavadoc rj;
+
+  /** The file being scanned, as it appears in error messages. */
+  private final String displayName;
+
+  /** True if the file being scanned is a package-info.java file. */
+  private final boolean isPackageInfo;
+
+  /** The lexer for the file being scanned. */
+  private final JavaLexer lexer;
+
+  /** The errors found in the file being scanned. */
+  private final List<Diagnostic> fileErrors = new ArrayList<>();
+
+  /**
+   * Creates a new DeclarationScanner.
+   *
+   * @param rj the program whose options determine which errors are reported
+   * @param javaFile the file to scan
+   * @param contents the contents of the file
+   */
+  private DeclarationScanner(RequireJavadoc rj, Path javaFile, char[] contents) {
+    this.rj = rj;
+    this.displayName = rj.displayName(javaFile).toString();
+    Path fileName = javaFile.getFileName();
+    this.isPackageInfo = fileName != null && fileName.toString().equals("package-info.java");
+    this.lexer = new JavaLexer(contents);
+  }
+
+  /**
+   * Returns the errors in one Java file, or null if the file must be parsed instead.
+   *
+   * @param rj the program whose options determine which errors are reported
+   * @param javaFile the file to scan
+   * @param contents the contents of the file
+   * @return the errors in the file, or null if the scanner cannot classify its contents
+   */
+  static @Nullable List<Diagnostic> scan(RequireJavadoc rj, Path javaFile, char[] contents) {
+    DeclarationScanner scanner = new DeclarationScanner(rj, javaFile, contents);
+    try {
+      scanner.scanCompilationUnit();
+    } catch (UnclassifiableException e) {
+      return null;
+    }
+    if (scanner.lexer.unusual) {
+      return null;
+    }
+    return scanner.fileErrors;
+  }
+
+  /**
+   * Adds an error stating that documentation is missing on the declaration at the given index.
+   *
+   * @param start the index at which the declaration starts
+   * @param end the index just after the end of the declaration
+   * @param simpleName the declaration's simple name, used in diagnostic messages
+   */
+  private void error(int start, int end, String simpleName) {
+    error(fileErrors.size(), start, end, simpleName);
+  }
+
+  /**
+   * Inserts an error stating that documentation is missing on the declaration at the given index.
+   * This is used for a declaration whose end is known only after its members have been scanned.
+   *
+   * @param errorIndex where to insert the error in {@link #fileErrors}
+   * @param start the index at which the declaration starts
+   * @param end the index just after the end of the declaration
+   * @param simpleName the declaration's simple name, used in diagnostic messages
+   */
+  private void error(int errorIndex, int start, int end, String simpleName) {
+    fileErrors.add(
+        errorIndex,
+        Diagnostic.missingDocumentation(
+            displayName,
+            lexer.line(start),
+            lexer.column(start),
+            lexer.line(Math.max(start, end - 1)),
+            simpleName));
+  }
+
+  /**
+   * Returns true if a Javadoc comment lies between a declaration and the previous node. Like {@code
+   * RequireJavadoc.hasJavadocComment}, this counts a Javadoc comment that is separated from the
+   * declaration by other comments.
+   *
+   * @param previousEnd the index just after the end of the previous node
+   * @param start the index at which the declaration starts
+   * @return true if the declaration has a Javadoc comment
+   */
+  private boolean hasJavadocComment(int previousEnd, int start) {
+    return lexer.hasJavadocBetween(previousEnd, start);
+  }
+
+  /**
+   * Throws an exception unless the current token is of the given kind.
+   *
+   * @param token the expected kind of token
+   * @throws UnclassifiableException if the current token is of a different kind
+   */
+  private void expect(Token token) throws UnclassifiableException {
+    if (lexer.token != token) {
+      throw UNCLASSIFIABLE;
+    }
+  }
+
+  /**
+   * Scans the whole file.
+   *
+   * @throws UnclassifiableException if the scanner cannot classify the file's contents
+   */
+  private void scanCompilationUnit() throws UnclassifiableException {
+    lexer.next();
+    int previousEnd = 0;
+    while (lexer.token != Token.EOF) {
+      if (lexer.token == Token.SEMICOLON) {
+        lexer.next();
+        continue;
+      }
+      int start = lexer.start;
+      Modifiers modifiers = readModifiers();
+      if (lexer.is("package")) {
+        if (modifiers.hasKeywords) {
+          throw UNCLASSIFIABLE;
+        }
+        lexer.next();
+        String packageName = readQualifiedName();
+        expect(Token.SEMICOLON);
+        if (rj.shouldNotRequire(packageName)) {
+          // Like RequireJavadocVisitor, report nothing in the file.
+          return;
+        }
+        if (isPackageInfo && !hasJavadocComment(previousEnd, start)) {
+          error(start, lexer.pos, packageName);
+        }
+        previousEnd = lexer.pos;
+        lexer.next();
+      } else if (lexer.is("import")) {
+        if (modifiers.hasKeywords || modifiers.hasAnnotations) {
+          throw UNCLASSIFIABLE;
+        }
+        while (lexer.token != Token.SEMICOLON) {
+          if (lexer.token == Token.EOF) {
+            throw UNCLASSIFIABLE;
+          }
+          lexer.next();
+        }
+        previousEnd = lexer.pos;
+        lexer.next();
+      } else {
+        // A type declaration; anything else, such as a module declaration, is unclassifiable.
+        previousEnd = scanTypeDeclaration(modifiers, start, previousEnd);
+        lexer.next();
+      }
+    }
+  }
+
+  /** The annotations and modifiers of a declaration. */
+  private static final class Modifiers {
+
+    /** True if there is at least one annotation. */
+    boolean hasAnnotations = false;
+
+    /** True if there is at least one modifier keyword. */
+    boolean hasKeywords = false;
+
+    /** True if there is a modifier keyword other than {@code static}. */
+    boolean hasNonStaticKeywords = false;
+
+    /** True if the declaration is private. */
+    boolean isPrivate = false;
+
+    /** True if there is an {@code @Override} annotation. */
+    boolean isOverride = false;
+
+    /** True if the modifiers are followed by {@code @interface}, an annotation type declaration. */
+    boolean isAnnotationType = false;
+
+    /** Creates a new, empty Modifiers. */
+    Modifiers() {}
+  }
+
+  /**
+   * Reads the annotations and modifiers at the current token, if any.
+   *
+   * @return the annotations and modifiers that were read
+   * @throws UnclassifiableException if the scanner cannot classify what it reads
+   */
+  private Modifiers readModifiers() throws UnclassifiableException {
+    Modifiers result = new Modifiers();
+    while (true) {
+      if (lexer.token == Token.AT) {
+        lexer.next();
+        if (lexer.is("interface")) {
+          result.isAnnotationType = true;
+          return result;
+        }
+        result.hasAnnotations = true;
+        String name = readQualifiedName();
+        if (name.equals("Override") || name.equals("java.lang.Override")) {
+          result.isOverride = true;
+        }
+        if (lexer.token == Token.LPAREN) {
+          skip(true, null);
+          lexer.next();
+        }
+      } else if (lexer.token == Token.IDENTIFIER && MODIFIERS.contains(lexer.identifier)) {
+        result.hasKeywords = true;
+        if (!lexer.identifier.equals("static")) {
+          result.hasNonStaticKeywords = true;
+        }
+        if (lexer.identifier.equals("private")) {
+          result.isPrivate = true;
+        }
+        lexer.next();
+      } else if (lexer.is("non")) {
+        lexer.next();
+        if (!(lexer.token == Token.OTHER && lexer.firstChar() == '-')) {
+          throw UNCLASSIFIABLE;
+        }
+        lexer.next();
+        if (!lexer.is("sealed")) {
+          throw UNCLASSIFIABLE;
+        }
+        result.hasKeywords = true;
+        result.hasNonStaticKeywords = true;
+        lexer.next();
+      } else {
+        return result;
+      }
+    }
+  }
+
+  /**
+   * Reads a name such as {@code java.lang.Override}, starting at the current token. Afterward, the
+   * current token is the one after the name.
+   *
+   * @return the name
+   * @throws UnclassifiableException if the current token is not an identifier
+   */
+  private String readQualifiedName() throws UnclassifiableException {
+    expect(Token.IDENTIFIER);
+    StringBuilder name = new StringBuilder(lexer.identifier);
+    lexer.next();
+    while (lexer.token == Token.DOT) {
+      lexer.next();
+      expect(Token.IDENTIFIER);
+      name.append('.').append(lexer.identifier);
+      lexer.next();
+    }
+    return name.toString();
+  }
+
+  /**
+   * Returns the kind of type that the current token declares, or null if it does not begin a type
+   * declaration.
+   *
+   * @param modifiers the annotations and modifiers before the current token
+   * @return the kind of type that is declared, or null
+   */
+  private @Nullable Kind typeDeclarationKind(Modifiers modifiers) {
+    if (modifiers.isAnnotationType) {
+      return Kind.ANNOTATION;
+    } else if (lexer.is("class") || lexer.is("interface")) {
+      return Kind.CLASS;
+    } else if (lexer.is("enum")) {
+      return Kind.ENUM;
+    } else if (lexer.is("record") && lexer.peek() == Token.IDENTIFIER) {
+      return Kind.RECORD;
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * Scans a type declaration, whose annotations and modifiers have been read. Afterward, the
+   * current token is the closing brace of its body.
+   *
+   * @param modifiers the type's annotations and modifiers
+   * @param start the index at which the declaration starts
+   * @param previousEnd the index just after the end of the previous node
+   * @return the index just after the end of the declaration
+   * @throws UnclassifiableException if the current token does not begin a type declaration, or if
+   *     the scanner cannot classify the type's contents
+   */
+  private int scanTypeDeclaration(Modifiers modifiers, int start, int previousEnd)
+      throws UnclassifiableException {
+    Kind kind = typeDeclarationKind(modifiers);
+    if (kind == null) {
+      throw UNCLASSIFIABLE;
+    }
+    lexer.next();
+    expect(Token.IDENTIFIER);
+    String name = lexer.identifier;
+    // Skip type parameters, record components, and supertypes.
+    int headerEnd = lexer.pos;
+    lexer.next();
+    while (lexer.token != Token.LBRACE) {
+      switch (lexer.token) {
+        case LPAREN:
+          skip(true, null);
+          break;
+        case IDENTIFIER:
+        case DOT:
+        case COMMA:
+        case LT:
+        case GT:
+        case AT:
+        case OTHER:
+          break;
+        default:
+          throw UNCLASSIFIABLE;
+      }
+      headerEnd = lexer.pos;
+      lexer.next();
+    }
+
+    if ((rj.dont_require_private && modifiers.isPrivate) || rj.shouldNotRequire(name)) {
+      skip(true, null);
+      return lexer.pos;
+    }
+    boolean missingJavadoc = !rj.dont_require_type && !hasJavadocComment(previousEnd, start);
+    int errorIndex = fileErrors.size();
+    scanTypeBody(kind, headerEnd);
+    if (missingJavadoc) {
+      error(errorIndex, start, lexer.pos, name);
+    }
+    return lexer.pos;
+  }
+
+  /**
+   * Scans the body of a type, or of an enum constant, starting at its opening brace. Afterward, the
+   * current token is the closing brace.
+   *
+   * @param kind the kind of type
+   * @param headerEnd the index just after the end of the last node before the body
+   * @throws UnclassifiableException if the scanner cannot classify the body's contents
+   */
+  private void scanTypeBody(Kind kind, int headerEnd) throws UnclassifiableException {
+    int previousEnd = headerEnd;
+    lexer.next();
+    if (kind == Kind.ENUM) {
+      previousEnd = scanEnumConstants(previousEnd);
+      if (lexer.token == Token.RBRACE) {
+        return;
+      }
+      lexer.next();
+    }
+    while (true) {
+      switch (lexer.token) {
+        case RBRACE:
+          return;
+        case SEMICOLON:
+          lexer.next();
+          break;
+        case EOF:
+          throw UNCLASSIFIABLE;
+        default:
+          previousEnd = scanMember(kind, previousEnd);
+          lexer.next();
+          break;
+      }
+    }
+  }
+
+  /**
+   * Scans the constants of an enum, starting at the first token of its body. Afterward, the current
+   * token is the semicolon that ends the constants or the closing brace of the body.
+   *
+   * @param headerEnd the index just after the end of the last node before the body
+   * @return the index just after the end of the last constant, or {@code headerEnd} if there are
+   *     none
+   * @throws UnclassifiableException if the scanner cannot classify the constants
+   */
+  private int scanEnumConstants(int headerEnd) throws UnclassifiableException {
+    int previousEnd = headerEnd;
+    while (true) {
+      switch (lexer.token) {
+        case SEMICOLON:
+        case RBRACE:
+          return previousEnd;
+        case COMMA:
+          lexer.next();
+          continue;
+        default:
+          break;
+      }
+      int start = lexer.start;
+      Modifiers modifiers = readModifiers();
+      if (modifiers.hasKeywords || modifiers.isAnnotationType) {
+        throw UNCLASSIFIABLE;
+      }
+      expect(Token.IDENTIFIER);
+      String name = lexer.identifier;
+      int end = lexer.pos;
+      lexer.next();
+      if (lexer.token == Token.LPAREN) {
+        skip(true, null);
+        end = lexer.pos;
+        lexer.next();
+      }
+      boolean shouldNotRequire = rj.shouldNotRequire(name);
+      boolean missingJavadoc =
+          !shouldNotRequire && !rj.dont_require_field && !hasJavadocComment(previousEnd, start);
+      int errorIndex = fileErrors.size();
+      if (lexer.token == Token.LBRACE) {
+        if (shouldNotRequire) {
+          skip(true, null);
+        } else {
+          scanTypeBody(Kind.CLASS, end);
+        }
+        end = lexer.pos;
+        lexer.next();
+      }
+      if (missingJavadoc) {
+        error(errorIndex, start, end, name);
+      }
+      previousEnd = end;
+      if (lexer.token != Token.COMMA
+          && lexer.token != Token.SEMICOLON
+          && lexer.token != Token.RBRACE) {
+        throw UNCLASSIFIABLE;
+      }
+    }
+  }
+
+  /**
+   * Scans a member of a type body, starting at its first token. Afterward, the current token is the
+   * last token of the member.
+   *
+   * @param kind the kind of the enclosing type
+   * @param previousEnd the index just after the end of the previous node
+   * @return the index just after the end of the member
+   * @throws UnclassifiableException if the scanner cannot classify the member
+   */
+  private int scanMember(Kind kind, int previousEnd) throws UnclassifiableException {
+    int start = lexer.start;
+    Modifiers modifiers = readModifiers();
+    if (typeDeclarationKind(modifiers) != null) {
+      return scanTypeDeclaration(modifiers, start, previousEnd);
+    }
+    if (lexer.token == Token.LBRACE) {
+      // An initializer.
+      if (modifiers.hasAnnotations || modifiers.hasNonStaticKeywords) {
+        throw UNCLASSIFIABLE;
+      }
+      skip(true, null);
+      return lexer.pos;
+    }
+    if (lexer.token == Token.LT) {
+      // Type parameters.
+      skipTypeArguments();
+    }
+    if (lexer.token == Token.IDENTIFIER && kind != Kind.ANNOTATION) {
+      Token next = lexer.peek();
+      if (next == Token.LPAREN) {
+        return scanConstructor(modifiers, start, previousEnd);
+      } else if (next == Token.LBRACE && kind == Kind.RECORD) {
+        // A compact canonical constructor, which RequireJavadocVisitor does not check.
+        lexer.next();
+        skip(true, null);
+        return lexer.pos;
+      }
+    }
+    TypeShape type = readType();
+    expect(Token.IDENTIFIER);
+    if (lexer.peek() == Token.LPAREN) {
+      return scanMethod(kind, modifiers, type, start, previousEnd);
+    } else {
+      return scanField(modifiers, start, previousEnd);
+    }
+  }
+
+  /** The shape of a type, as far as trivial getters and setters are concerned. */
+  private enum TypeShape {
+    /** The type {@code void}. */
+    VOID,
+    /** The type {@code boolean}. */
+    BOOLEAN,
+    /** Any other type. */
+    OTHER
+  }
+
+  /**
+   * Reads a type, starting at the current token. Afterward, the current token is the one after the
+   * type.
+   *
+   * @return the shape of the type
+   * @throws UnclassifiableException if the current tokens are not a type
+   */
+  private TypeShape readType() throws UnclassifiableException {
+    expect(Token.IDENTIFIER);
+    String first = lexer.identifier;
+    boolean simple = true;
+    lexer.next();
+    while (true) {
+      if (lexer.token == Token.LT) {
+        simple = false;
+        skipTypeArguments();
+      }
+      if (lexer.token != Token.DOT) {
+        break;
+      }
+      simple = false;
+      lexer.next();
+      expect(Token.IDENTIFIER);
+      lexer.next();
+    }
+    while (lexer.token == Token.LBRACKET) {
+      simple = false;
+      lexer.next();
+      expect(Token.RBRACKET);
+      lexer.next();
+    }
+    if (simple && first.equals("void")) {
+      return TypeShape.VOID;
+    } else if (simple && first.equals("boolean")) {
+      return TypeShape.BOOLEAN;
+    } else {
+      return TypeShape.OTHER;
+    }
+  }
+
+  /**
+   * Skips type arguments or type parameters, starting at the opening angle bracket. Afterward, the
+   * current token is the one after the closing angle bracket.
+   *
+   * @throws UnclassifiableException if the angle brackets are not balanced
+   */
+  private void skipTypeArguments() throws UnclassifiableException {
+    int depth = 0;
+    do {
+      switch (lexer.token) {
+        case LT:
+          depth++;
+          break;
+        case GT:
+          depth--;
+          break;
+        case LPAREN:
+          skip(true, null);
+          break;
+        case IDENTIFIER:
+        case DOT:
+        case COMMA:
+        case AT:
+        case LBRACKET:
+        case RBRACKET:
+        case OTHER:
+          break;
+        default:
+          throw UNCLASSIFIABLE;
+      }
+      lexer.next();
+    } while (depth > 0);
+  }
+
+  /** The formal parameters of a method or constructor. */
+  private static final class Parameters {
+
+    /** The number of formal parameters. */
+    int count = 0;
+
+    /** The name of the last formal parameter, or null if there are none. */
+    @Nullable String lastName = null;
+
+    /** Creates a new, empty Parameters. */
+    Parameters() {}
+  }
+
+  /**
+   * Reads formal parameters, starting at the opening parenthesis. Afterward, the current token is
+   * the one after the closing parenthesis.
+   *
+   * @return the formal parameters
+   * @throws UnclassifiableException if the scanner cannot classify the formal parameters
+   */
+  private Parameters readParameters() throws UnclassifiableException {
+    Parameters result = new Parameters();
+    lexer.next();
+    int angles = 0;
+    while (lexer.token != Token.RPAREN) {
+      switch (lexer.token) {
+        case LPAREN:
+          // The arguments of an annotation.
+          skip(true, null);
+          break;
+        case LT:
+          angles++;
+          break;
+        case GT:
+          angles--;
+          break;
+        case COMMA:
+          if (angles == 0) {
+            result.count++;
+          }
+          break;
+        case IDENTIFIER:
+          if (lexer.identifier.equals("this")) {
+            // A receiver parameter, which JavaParser does not count as a formal parameter.
+            throw UNCLASSIFIABLE;
+          }
+          result.lastName = lexer.identifier;
+          break;
+        case DOT:
+        case AT:
+        case LBRACKET:
+        case RBRACKET:
+        case OTHER:
+          break;
+        default:
+          throw UNCLASSIFIABLE;
+      }
+      lexer.next();
+    }
+    if (result.lastName != null) {
+      result.count++;
+    }
+    lexer.next();
+    return result;
+  }
+
+  /**
+   * Scans a constructor, starting at its name. Afterward, the current token is the closing brace of
+   * its body.
+   *
+   * @param modifiers the constructor's annotations and modifiers
+   * @param start the index at which the declaration starts
+   * @param previousEnd the index just after the end of the previous node
+   * @return the index just after the end of the constructor
+   * @throws UnclassifiableException if the scanner cannot classify the constructor
+   */
+  private int scanConstructor(Modifiers modifiers, int start, int previousEnd)
+      throws UnclassifiableException {
+    String name = lexer.identifier;
+    lexer.next();
+    Parameters parameters = readParameters();
+    skipThrows();
+    expect(Token.LBRACE);
+    skip(true, null);
+    if (rj.dont_require_private && modifiers.isPrivate) {
+      return lexer.pos;
+    }
+    if (rj.dont_require_noarg_constructor && parameters.count == 0) {
+      return lexer.pos;
+    }
+    if (rj.shouldNotRequire(name)) {
+      return lexer.pos;
+    }
+    if (!rj.dont_require_method && !hasJavadocComment(previousEnd, start)) {
+      error(start, lexer.pos, name);
+    }
+    return lexer.pos;
+  }
+
+  /**
+   * Skips a {@code throws} clause, if the current token begins one. Afterward, the current token is
+   * the one after the clause.
+   *
+   * @throws UnclassifiableException if the scanner cannot classify the clause
+   */
+  private void skipThrows() throws UnclassifiableException {
+    if (!lexer.is("throws")) {
+      return;
+    }
+    lexer.next();
+    while (lexer.token != Token.LBRACE && lexer.token != Token.SEMICOLON) {
+      switch (lexer.token) {
+        case LPAREN:
+          skip(true, null);
+          break;
+        case IDENTIFIER:
+        case DOT:
+        case COMMA:
+        case LT:
+        case GT:
+        case AT:
+        case OTHER:
+          break;
+        default:
+          throw UNCLASSIFIABLE;
+      }
+      lexer.next();
+    }
+  }
+
+  /**
+   * Scans a method or annotation member, starting at its name. Afterward, the current token is the
+   * last token of the declaration.
+   *
+   * @param kind the kind of the enclosing type
+   * @param modifiers the method's annotations and modifiers
+   * @param type the shape of the method's return type
+   * @param start the index at which the declaration starts
+   * @param previousEnd the index just after the end of the previous node
+   * @return the index just after the end of the method
+   * @throws UnclassifiableException if the scanner cannot classify the method
+   */
+  private int scanMethod(Kind kind, Modifiers modifiers, TypeShape type, int start, int previousEnd)
+      throws UnclassifiableException {
+    String name = lexer.identifier;
+    lexer.next();
+    Parameters parameters = readParameters();
+    if (lexer.token == Token.LBRACKET) {
+      // Array dimensions after the formal parameters, which are obsolete.
+      throw UNCLASSIFIABLE;
+    }
+    skipThrows();
+    if (lexer.is("default")) {
+      // The default value of an annotation member.
+      lexer.next();
+      skip(false, null);
+    }
+    List<String> body = null;
+    if (lexer.token == Token.LBRACE) {
+      body = new ArrayList<>();
+      skip(true, body);
+    } else {
+      expect(Token.SEMICOLON);
+    }
+    int end = lexer.pos;
+
+    if (kind == Kind.ANNOTATION) {
+      if (!rj.shouldNotRequire(name)
+          && !rj.dont_require_method
+          && !hasJavadocComment(previousEnd, start)) {
+        error(start, end, name);
+      }
+      return end;
+    }
+    if (rj.dont_require_private && modifiers.isPrivate) {
+      return end;
+    }
+    if (rj.dont_require_trivial_properties
+        && isTrivialGetterOrSetter(name, type, parameters, body)) {
+      return end;
+    }
+    if (rj.shouldNotRequire(name)) {
+      return end;
+    }
+    if (!rj.dont_require_method
+        && !modifiers.isOverride
+        && !hasJavadocComment(previousEnd, start)) {
+      error(start, end, name);
+    }
+    return end;
+  }
+
+  /**
+   * Scans a field declaration, starting at the name of its first variable. Afterward, the current
+   * token is the semicolon that ends it.
+   *
+   * @param modifiers the field's annotations and modifiers
+   * @param start the index at which the declaration starts
+   * @param previousEnd the index just after the end of the previous node
+   * @return the index just after the end of the field declaration
+   * @throws UnclassifiableException if the scanner cannot classify the field declaration
+   */
+  private int scanField(Modifiers modifiers, int start, int previousEnd)
+      throws UnclassifiableException {
+    List<String> names = new ArrayList<>();
+    List<Integer> starts = new ArrayList<>();
+    while (true) {
+      expect(Token.IDENTIFIER);
+      names.add(lexer.identifier);
+      starts.add(lexer.start);
+      lexer.next();
+      while (lexer.token == Token.LBRACKET) {
+        lexer.next();
+        expect(Token.RBRACKET);
+        lexer.next();
+      }
+      if (lexer.token == Token.EQUALS) {
+        lexer.next();
+        boolean sawLessThan = skip(false, null);
+        if (sawLessThan && lexer.token == Token.COMMA) {
+          // The comma might be within type arguments, as in "x = new HashMap<K, V>()".
+          throw UNCLASSIFIABLE;
+        }
+      }
+      if (lexer.token == Token.SEMICOLON) {
+        break;
+      }
+      expect(Token.COMMA);
+      lexer.next();
+    }
+    int end = lexer.pos;
+
+    if (rj.dont_require_private && modifiers.isPrivate) {
+      return end;
+    }
+    boolean hasJavadocComment = hasJavadocComment(previousEnd, start);
+    for (int i = 0; i < names.size(); i++) {
+      String name = names.get(i);
+      if (name.equals("serialVersionUID")) {
+        continue;
+      }
+      if (rj.shouldNotRequire(name)) {
+        continue;
+      }
+      if (!rj.dont_require_field && !hasJavadocComment) {
+        error(starts.get(i), end, name);
+      }
+    }
+    return end;
+  }
+
+  /**
+   * Skips tokens, starting at the current one. If {@code isGroup} is true, the current token is an
+   * opening parenthesis, bracket, or brace; afterward, the current token is the matching closing
+   * one. Otherwise, the current token begins an expression; afterward, the current token is the
+   * comma or semicolon that ends it.
+   *
+   * <p>Throws an exception if the skipped tokens declare a local or anonymous class, whose members
+   * RequireJavadocVisitor would check unless such classes are exempt.
+   *
+   * @param isGroup true to skip a parenthesized, bracketed, or braced group, false to skip an
+   *     expression
+   * @param tokens if non-null, the text of up to {@link #MAX_PROPERTY_BODY_TOKENS} skipped tokens
+   *     is added to it (just the first character of tokens other than identifiers), and it is made
+   *     longer than that if there are more tokens
+   * @return true if an expression contains a less-than sign outside any group
+   * @throws UnclassifiableException if the tokens are unbalanced or declare a class that must be
+   *     checked
+   */
+  private boolean skip(boolean isGroup, @Nullable List<String> tokens)
+      throws UnclassifiableException {
+    int depth = 0;
+    boolean sawLessThan = false;
+    // The depths at which the arguments of pending instance creations begin; -1 for one whose
+    // arguments have not begun yet.
+    Deque<Integer> creations = new ArrayDeque<>();
+    // The depth of type arguments in the type of the innermost pending instance creation whose
+    // arguments have not begun, as in "new Foo<int[]>".
+    int angles = 0;
+    // True if the previous token ended the arguments of an instance creation.
+    boolean afterCreation = false;
+    @Nullable String previousIdentifier = null;
+    boolean previousWasDot = false;
+    boolean previousWasColon = false;
+    while (true) {
+      boolean endsCreation = false;
+      switch (lexer.token) {
+        case EOF:
+          throw UNCLASSIFIABLE;
+        case LBRACE:
+          if (afterCreation && !rj.dont_require_local_class) {
+            // An anonymous class.
+            throw UNCLASSIFIABLE;
+          }
+          depth++;
+          break;
+        case LPAREN:
+          // Not the arguments of an annotation within type arguments, as in "new Foo<@A(1) Bar>".
+          if (!creations.isEmpty() && creations.peek() == -1 && angles <= 0) {
+            creations.pop();
+            creations.push(depth);
+          }
+          depth++;
+          break;
+        case LBRACKET:
+          // An array creation, such as "new int[] {1, 2}", has no class body.  A bracket within
+          // type arguments, as in "new Foo<int[]>() {...}", is not an array creation.
+          if (!creations.isEmpty() && creations.peek() == -1 && angles <= 0) {
+            creations.pop();
+          }
+          depth++;
+          break;
+        case RBRACE:
+        case RPAREN:
+        case RBRACKET:
+          depth--;
+          if (depth < 0) {
+            throw UNCLASSIFIABLE;
+          }
+          if (lexer.token == Token.RPAREN && !creations.isEmpty() && creations.peek() == depth) {
+            creations.pop();
+            endsCreation = true;
+          }
+          break;
+        case COMMA:
+        case SEMICOLON:
+          if (!isGroup && depth == 0) {
+            return sawLessThan;
+          }
+          break;
+        case LT:
+          if (depth == 0) {
+            sawLessThan = true;
+          }
+          angles++;
+          break;
+        case GT:
+          angles--;
+          break;
+        case IDENTIFIER:
+          String identifier = lexer.identifier;
+          if (identifier.equals("new") && !previousWasColon) {
+            // An instance creation, not a constructor reference such as "Foo::new".
+            creations.push(-1);
+            angles = 0;
+          } else if (!rj.dont_require_local_class
+              && (identifier.equals("class") && !previousWasDot
+                  || identifier.equals("interface")
+                  || identifier.equals("enum")
+                  || "record".equals(previousIdentifier))) {
+            // A local class.
+            throw UNCLASSIFIABLE;
+          }
+          break;
+        default:
+          break;
+      }
+      if (tokens != null && tokens.size() <= MAX_PROPERTY_BODY_TOKENS) {
+        tokens.add(
+            lexer.token == Token.IDENTIFIER ? lexer.identifier : String.valueOf(lexer.firstChar()));
+      }
+      if (isGroup && depth == 0) {
+        return sawLessThan;
+      }
+      afterCreation = endsCreation;
+      previousIdentifier = (lexer.token == Token.IDENTIFIER ? lexer.identifier : null);
+      previousWasDot = (lexer.token == Token.DOT);
+      previousWasColon = (lexer.token == Token.OTHER && lexer.firstChar() == ':');
+      lexer.next();
+    }
+  }
+
+  /**
+   * Return true if a method is a trivial getter or setter. This mirrors {@code
+   * RequireJavadoc.isTrivialGetterOrSetter}, but examines tokens rather than an AST.
+   *
+   * @param name the method's name
+   * @param type the shape of the method's return type
+   * @param parameters the method's formal parameters
+   * @param body the tokens of the method's body, including its braces, or null if it has none
+   * @return true if the method is a trivial getter or setter
+   */
+  private static boolean isTrivialGetterOrSetter(
+      String name, TypeShape type, Parameters parameters, @Nullable List<String> body) {
+    if (body == null || body.size() > MAX_PROPERTY_BODY_TOKENS) {
+      return false;
+    }
+    List<String> statement = body.subList(1, body.size() - 1);
+    PropertyKind kind = PropertyKind.fromMethodName(name);
+    if (kind != PropertyKind.GETTER_NO_PREFIX) {
+      if (isTrivialGetterOrSetter(name, type, parameters, statement, kind)) {
+        return true;
+      }
+    }
+    return isTrivialGetterOrSetter(
+        name, type, parameters, statement, PropertyKind.GETTER_NO_PREFIX);
+  }
+
+  /**
+   * Return true if a method is a trivial getter or setter of the given kind.
+   *
+   * @param name the method's name
+   * @param type the shape of the method's return type
+   * @param parameters the method's formal parameters
+   * @param statement the tokens of the method's body, excluding its braces
+   * @param propertyKind the kind of property
+   * @return true if the method is a trivial getter or setter of the given kind
+   */
+  private static boolean isTrivialGetterOrSetter(
+      String name,
+      TypeShape type,
+      Parameters parameters,
+      List<String> statement,
+      PropertyKind propertyKind) {
+    String propertyName = RequireJavadoc.propertyName(name, propertyKind);
+    if (propertyName == null) {
+      return false;
+    }
+
+    // The signature.
+    if (parameters.count != propertyKind.requiredParams) {
+      return false;
+    }
+    if (parameters.count == 1 && !propertyName.equals(parameters.lastName)) {
+      return false;
+    }
+    switch (propertyKind.returnType) {
+      case VOID:
+        if (type != TypeShape.VOID) {
+          return false;
+        }
+        break;
+      case BOOLEAN:
+        if (type != TypeShape.BOOLEAN) {
+          return false;
+        }
+        break;
+      case NON_VOID:
+        if (type == TypeShape.VOID) {
+          return false;
+        }
+        break;
+      default:
+        throw new Error("Unexpected enum value " + propertyKind.returnType);
+    }
+
+    // The body: "return foo;", "return this.foo;", "return !foo;", or "this.foo = foo;".
+    int size = statement.size();
+    if (size == 0 || !statement.get(size - 1).equals(";")) {
+      return false;
+    }
+    if (propertyKind.isGetter()) {
+      int i = 0;
+      if (!statement.get(i++).equals("return")) {
+        return false;
+      }
+      if (propertyKind == PropertyKind.GETTER_NOT) {
+        if (i == size || !statement.get(i++).equals("!")) {
+          return false;
+        }
+      }
+      String returnName = fieldName(statement.subList(i, size - 1));
+      return propertyName.equals(returnName);
+    } else {
+      int equals = statement.indexOf("=");
+      if (equals == -1 || equals != size - 3) {
+        return false;
+      }
+      String target = fieldName(statement.subList(0, equals));
+      if (target == null || statement.get(0).equals(target)) {
+        // The target must be a field access on "this".
+        return false;
+      }
+      String value = statement.get(size - 2);
+      return propertyName.equals(target) && propertyName.equals(value);
+    }
+  }
+
+  /**
+   * If the tokens are a simple name such as {@code foo} or a field access on {@code this} such as
+   * {@code this.foo} or {@code Outer.this.foo}, returns the name of the variable. Otherwise returns
+   * null.
+   *
+   * @param tokens some tokens
+   * @return the name of the variable that the tokens refer to, or null
+   */
+  private static @Nullable String fieldName(List<String> tokens) {
+    int size = tokens.size();
+    if (size == 1) {
+      String name = tokens.get(0);
+      return isIdentifier(name) && !KEYWORD_EXPRESSIONS.contains(name) ? name : null;
+    }
+    // "(Name .)* this . name"
+    if (size < 3 || size % 2 == 0) {
+      return null;
+    }
+    for (int i = 0; i < size; i++) {
+      String token = tokens.get(i);
+      if (i % 2 == 1 ? !token.equals(".") : !isIdentifier(token)) {
+        return null;
+      }
+    }
+    if (!tokens.get(size - 3).equals("this")) {
+      return null;
+    }
+    String name = tokens.get(size - 1);
+    return KEYWORD_EXPRESSIONS.contains(name) ? null : name;
+  }
+
+  /**
+   * Returns true if the token text is an identifier or keyword.
+   *
+   * @param token the text of a token
+   * @return true if the token is an identifier or keyword
+   */
+  private static boolean isIdentifier(String token) {
+    return Character.isJavaIdentifierStart(token.charAt(0));
+  }
+}
@@ -0,0 +1,193 @@
+package org.plumelib.javadoc;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Objects;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * An error about missing documentation: a Java element that lacks a Javadoc comment, or a package
+ * that lacks a {@code package-info.java} file. Immutable.
+ */
+public final class Diagnostic {
+
+  /** The kinds of errors. */
+  public enum Kind {
+    /** A Java element (or the package declaration of a package-info.java file) lacks Javadoc. */
+    MISSING_DOCUMENTATION,
+    /** A package lacks a package-info.java file. */
+    MISSING_PACKAGE_INFO
+  }
+
+  /** The kind of error. */
+  private final Kind kind;
+
+  /**
+   * The file, as reported in the error. For {@link Kind#MISSING_PACKAGE_INFO}, it is the missing
+   * package-info.java file.
+   */
+  private final String file;
+
+  /** The line of the undocumented element, or 0 if it is not known. */
+  private final int line;
+
+  /** The column of the undocumented element, or 0 if it is not known. */
+  private final int column;
+
+  /**
+   * The last line of the undocumented element's declaration, or 0 if it is not known. Together with
+   * {@link #line}, it determines whether a change touched the element.
+   */
+  private final int endLine;
+
+  /**
+   * The simple name of the undocumented element, or the name of the package. Empty for {@link
+   * Kind#MISSING_PACKAGE_INFO}.
+   */
+  private final String name;
+
+  /**
+   * Creates a new Diagnostic.
+   *
+   * @param kind the kind of error
+   * @param file the file, as reported in the error
+   * @param line the line of the undocumented element, or 0 if it is not known
+   * @param column the column of the undocumented element, or 0 if it is not known
+   * @param endLine the last line of the undocumented element's declaration, or 0 if it is not known
+   * @param name the simple name of the undocumented element, or the name of the package
+   */
+  Diagnostic(Kind kind, String file, int line, int column, int endLine, String name) {
+    this.kind = kind;
+    this.file = file;
+    this.line = line;
+    this.column = column;
+    this.endLine = endLine;
+    this.name = name;
+  }
+
+  /**
+   * Returns an error about a Java element that lacks a Javadoc comment.
+   *
+   * @param file the file, as reported in the error
+   * @param line the line of the element, or 0 if it is not known
+   * @param column the column of the element, or 0 if it is not known
+   * @param endLine the last line of the element's declaration, or 0 if it is not known
+   * @param name the simple name of the element, or the name of the package
+   * @return an error about the element
+   */
+  static Diagnostic missingDocumentation(
+      String file, int line, int column, int endLine, String name) {
+    return new Diagnostic(Kind.MISSING_DOCUMENTATION, file, line, column, endLine, name);
+  }
+
+  /**
+   * Returns an error about a package that lacks a package-info.java file.
+   *
+   * @param packageInfo the missing package-info.java file
+   * @return an error about the package
+   */
+  static Diagnostic missingPackageInfo(String packageInfo) {
+    return new Diagnostic(Kind.MISSING_PACKAGE_INFO, packageInfo, 0, 0, 0, "");
+  }
+
+  /**
+   * Returns a copy of this error, about the given file.
+   *
+   * @param file the file, as reported in the error
+   * @return a copy of this error, about the given file
+   */
+  Diagnostic withFile(String file) {
+    return new Diagnostic(kind, file, line, column, endLine, name);
+  }
+
+  /**
+   * Returns the kind of error.
+   *
+   * @return the kind of error
+   */
+  public Kind getKind() {
+    return kind;
+  }
+
+  /**
+   * Returns the file, as reported in the error. For {@link Kind#MISSING_PACKAGE_INFO}, it is the
+   * missing package-info.java file.
+   *
+   * @return the file
+   */
+  public Path getFile() {
+    return Paths.get(file);
+  }
+
+  /**
+   * Returns the line of the undocumented element, or 0 if it is not known.
+   *
+   * @return the line of the undocumented element, or 0
+   */
+  public int getLine() {
+    return line;
+  }
+
+  /**
+   * Returns the column of the undocumented element, or 0 if it is not known.
+   *
+   * @return the column of the undocumented element, or 0
+   */
+  public int getColumn() {
+    return column;
+  }
+
+  /**
+   * Returns the last line of the undocumented element's declaration, or 0 if it is not known. It is
+   * not part of the error message, and errors that differ only in it are equal.
+   *
+   * @return the last line of the undocumented element's declaration, or 0
+   */
+  int getEndLine() {
+    return endLine;
+  }
+
+  /**
+   * Returns the simple name of the undocumented element, or the name of the package. Returns the
+   * empty string for {@link Kind#MISSING_PACKAGE_INFO}.
+   *
+   * @return the name of the undocumented element
+   */
+  public String getName() {
+    return name;
+  }
+
+  /** Returns the error message, as the command-line program prints it. */
+  @Override
+  public String toString() {
+    switch (kind) {
+      case MISSING_PACKAGE_INFO:
+        return "missing package documentation: no file " + file;
+      case MISSING_DOCUMENTATION:
+        if (line == 0) {
+          return "missing documentation for " + name;
+        }
+        return String.format("%s:%d:%d: missing documentation for %s", file, line, column, name);
+      default:
+        throw new Error("unexpected Kind " + kind);
+    }
+  }
+
+  @Override
+  public boolean equals(@Nullable Object other) {
+    if (!(other instanceof Diagnostic)) {
+      return false;
+    }
+    Diagnostic that = (Diagnostic) other;
+    return kind == that.kind
+        && file.equals(that.file)
+        && line == that.line
+        && column == that.column
+        && name.equals(that.name);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(kind, file, line, column, name);
+  }
+}
@@ -0,0 +1,125 @@
+package org.plumelib.javadoc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Asks the local git repository which files have changed since a given ref: those that differ
+ * between the merge base of the ref and {@code HEAD} and the working tree, whether or not the
+ * changes are staged, and untracked files that are not ignored.
+ */
+final class GitChangedFiles {
+
+  /** Do not instantiate. */
+  private GitChangedFiles() {
+    throw new Error("Do not instantiate");
+  }
+
+  /**
+   * Returns the files that have changed since the merge base of the given ref and {@code HEAD}.
+   * Files that have been deleted are included, so that callers can tell which directories lost a
+   * file.
+   *
+   * @param dir a directory in the git working tree
+   * @param ref a git ref, such as {@code origin/main}
+   * @return the real, absolute pathnames of the changed files
+   * @throws IOException if git cannot be run or reports an error
+   */
+  static Set<Path> since(Path dir, String ref) throws IOException {
+    Path top = Paths.get(git(dir, "rev-parse", "--show-toplevel").trim()).toRealPath();
+    String base = git(top, "merge-base", ref, "HEAD").trim();
+    List<String> names = new ArrayList<>();
+    // The working tree against the base, including staged and unstaged changes.
+    names.addAll(split(git(top, "diff", "--name-only", "--no-renames", "-z", base, "--")));
+    // Untracked files that are not ignored.
+    names.addAll(split(git(top, "ls-files", "--others", "--exclude-standard", "-z")));
+    Set<Path> result = new LinkedHashSet<>();
+    for (String name : names) {
+      result.add(top.resolve(name));
+    }
+    return result;
+  }
+
+  /**
+   * Splits the NUL-terminated output of a git command with the {@code -z} option.
+   *
+   * @param output the output of a git command
+   * @return the entries of the output
+   */
+  private static List<String> split(String output) {
+    if (output.isEmpty()) {
+      return new ArrayList<>();
+    }
+    return Arrays.asList(output.split("\0"));
+  }
+
+  /**
+   * Runs a git command and returns its standard output.
+   *
+   * @param dir the directory in which to run git
+   * @param args the arguments to git
+   * @return the standard output of the command
+   * @throws IOException if git cannot be run or exits with a non-zero status
+   */
+  private static String git(Path dir, String... args) throws IOException {
+    List<String> command = new ArrayList<>();
+    command.add("git");
+    command.addAll(Arrays.asList(args));
+    Path errors = Files.createTempFile("require-javadoc-git", ".txt");
+    try {
+      Process process =
+          new ProcessBuilder(command)
+              .directory(dir.toFile())
+              .redirectError(errors.toFile())
+              .start();
+      process.getOutputStream().close();
+      String output;
+      try (InputStream in = process.getInputStream()) {
+        output = readAll(in);
+      }
+      int status;
+      try {
+        status = process.waitFor();
+      } catch (InterruptedException e) {
+        process.destroy();
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while running " + String.join(" ", command), e);
+      }
+      if (status != 0) {
+        String message = new String(Files.readAllBytes(errors), Charset.defaultCharset()).trim();
+        throw new IOException(
+            String.join(" ", command) + " failed" + (message.isEmpty() ? "" : ": " + message));
+      }
+      return output;
+    } finally {
+      Files.deleteIfExists(errors);
+    }
+  }
+
+  /**
+   * Reads a stream to its end.
+   *
+   * @param in a stream
+   * @return the contents of the stream, decoded with the default charset
+   * @throws IOException if the stream cannot be read
+   */
+  private static String readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int n;
+    while ((n = in.read(buffer)) != -1) {
+      bytes.write(buffer, 0, n);
+    }
+    return new String(bytes.toByteArray(), Charset.defaultCharset());
+  }
+}
@@ -0,0 +1,173 @@
+package org.plumelib.javadoc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * The .gitignore files that apply to the files and directories in one file tree. They are the
+ * .gitignore files in the tree and in the directories above it, up to the top of the git working
+ * tree that contains it, and the {@code .git/info/exclude} file. As in git, a pattern in a
+ * .gitignore file applies to the directory that contains the file and the directories below it, and
+ * a deeper .gitignore file takes precedence over a shallower one. The {@code .git} directory is
+ * always ignored.
+ *
+ * <p>Each directory's .gitignore file is read once, the first time a file in that directory is
+ * queried. A .gitignore file that cannot be read is treated as empty.
+ *
+ * <p>A GitIgnore is thread-safe.
+ */
+final class GitIgnore {
+
+  /** The top of the git working tree, or the root of the file tree if it is not in one. */
+  private final Path top;
+
+  /** The rules that apply above {@link #top}: those of {@code .git/info/exclude}, if any. */
+  private final Rules topRules;
+
+  /** The rules that apply to the entries of each directory that has been queried. */
+  private final ConcurrentHashMap<Path, Rules> rulesByDirectory = new ConcurrentHashMap<>();
+
+  /**
+   * Creates a new GitIgnore.
+   *
+   * @param root the root of the file tree
+   */
+  GitIgnore(Path root) {
+    root = root.toAbsolutePath();
+    Path top = root;
+    for (Path dir = root; dir != null; dir = dir.getParent()) {
+      if (Files.exists(dir.resolve(".git"), LinkOption.NOFOLLOW_LINKS)) {
+        top = dir;
+        break;
+      }
+    }
+    this.top = top;
+    this.topRules = Rules.NONE.with(top, top.resolve(".git").resolve("info").resolve("exclude"));
+  }
+
+  /**
+   * Returns true if the .gitignore files ignore the given file or directory.
+   *
+   * @param file a file or directory in the file tree
+   * @param isDirectory true if {@code file} is a directory
+   * @return true if the file or directory is ignored
+   */
+  boolean isIgnored(Path file, boolean isDirectory) {
+    file = file.toAbsolutePath();
+    Path dir = file.getParent();
+    if (dir == null || !dir.startsWith(top)) {
+      return false;
+    }
+    Path name = file.getFileName();
+    if (name != null && name.toString().equals(".git")) {
+      return true;
+    }
+    for (Rules rules = rulesFor(dir); rules != null; rules = rules.parent) {
+      Boolean match = rules.match(file, isDirectory);
+      if (match != null) {
+        return match;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the rules that apply to the entries of the given directory.
+   *
+   * @param dir a directory at or below {@link #top}
+   * @return the rules that apply to the entries of {@code dir}
+   */
+  private Rules rulesFor(Path dir) {
+    Rules rules = rulesByDirectory.get(dir);
+    if (rules != null) {
+      return rules;
+    }
+    // Not computeIfAbsent, which must not be called recursively.
+    Path parent = dir.getParent();
+    Rules parentRules = (dir.equals(top) || parent == null ? topRules : rulesFor(parent));
+    rules = parentRules.with(dir, dir.resolve(".gitignore"));
+    Rules previous = rulesByDirectory.putIfAbsent(dir, rules);
+    return (previous != null ? previous : rules);
+  }
+
+  /**
+   * Returns a pathname relative to a directory, with {@code /} as the separator.
+   *
+   * @param dir a directory
+   * @param file a file or directory below {@code dir}
+   * @return the pathname of {@code file} relative to {@code dir}
+   */
+  static String relativePath(Path dir, Path file) {
+    String result = dir.relativize(file).toString();
+    return (File.separatorChar == '/' ? result : result.replace(File.separatorChar, '/'));
+  }
+
+  /** The patterns of one ignore file, followed by those of the files it takes precedence over. */
+  private static final class Rules {
+
+    /** The end of every list of rules. */
+    static final Rules NONE = new Rules(null, null, null);
+
+    /** The patterns of an ignore file, or null for {@link #NONE}. */
+    final @Nullable GlobPatterns patterns;
+
+    /** The directory to which the patterns are relative. */
+    final @Nullable Path dir;
+
+    /** The rules that apply if these patterns do not match, or null for {@link #NONE}. */
+    final @Nullable Rules parent;
+
+    /**
+     * Creates a new Rules.
+     *
+     * @param patterns the patterns of an ignore file
+     * @param dir the directory to which the patterns are relative
+     * @param parent the rules that apply if the patterns do not match
+     */
+    private Rules(@Nullable GlobPatterns patterns, @Nullable Path dir, @Nullable Rules parent) {
+      this.patterns = patterns;
+      this.dir = dir;
+      this.parent = parent;
+    }
+
+    /**
+     * Returns whether these patterns, but not those of {@link #parent}, ignore the given file.
+     *
+     * @param file a file or directory below {@link #dir}
+     * @param isDirectory true if {@code file} is a directory
+     * @return true if the file is ignored, false if it is re-included, or null if no pattern
+     *     matches it
+     */
+    @Nullable Boolean match(Path file, boolean isDirectory) {
+      if (patterns == null || dir == null) {
+        return null;
+      }
+      return patterns.match(relativePath(dir, file), isDirectory);
+    }
+
+    /**
+     * Returns these rules, preceded by the patterns of the given ignore file if it exists.
+     *
+     * @param dir the directory to which the ignore file's patterns are relative
+     * @param ignoreFile an ignore file, which need not exist
+     * @return the rules that apply below {@code dir}
+     */
+    Rules with(Path dir, Path ignoreFile) {
+      String contents;
+      try {
+        contents = new String(Files.readAllBytes(ignoreFile), StandardCharsets.UTF_8);
+      } catch (IOException e) {
+        return this;
+      }
+      GlobPatterns patterns = GlobPatterns.compile(Arrays.asList(contents.split("\r?\n")));
+      return (patterns == null ? this : new Rules(patterns, dir, this));
+    }
+  }
+}
@@ -0,0 +1,216 @@
+package org.plumelib.javadoc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A list of glob patterns with the syntax of a .gitignore file, compiled into a single regular
+ * expression. The patterns are matched against pathnames relative to a base directory, with {@code
+ * /} as the separator:
+ *
+ * <ul>
+ *   <li>A pattern without a slash, other than at its end, matches a file or directory name at any
+ *       depth below the base directory. For example, {@code build} matches {@code build} and {@code
+ *       a/b/build}.
+ *   <li>Any other pattern matches a pathname relative to the base directory. A leading slash is
+ *       ignored. For example, {@code /build} and {@code src/generated} match only at the top.
+ *   <li>A pattern that ends with a slash matches only directories.
+ *   <li>{@code *} matches anything except a slash, {@code ?} matches any one character except a
+ *       slash, and {@code [...]} matches one character in a range. {@code **} matches across
+ *       slashes, as in {@code **}{@code /foo}, {@code foo/**}, and {@code a/**}{@code /b}.
+ *   <li>A pattern that starts with {@code !} re-includes what an earlier pattern excluded. The last
+ *       pattern that matches a pathname decides.
+ *   <li>Blank lines and lines that start with {@code #} are ignored. A backslash quotes the next
+ *       character.
+ * </ul>
+ *
+ * <p>A GlobPatterns is immutable and thread-safe.
+ */
+final class GlobPatterns {
+
+  /**
+   * Matches a pathname, followed by a slash if it is a directory, against all the patterns. The
+   * alternatives are in reverse order, so the first one that matches comes from the last pattern
+   * that matches. Each alternative is a capturing group.
+   */
+  private final Pattern pattern;
+
+  /** For each capturing group of {@link #pattern}, whether its pattern starts with {@code !}. */
+  private final boolean[] negated;
+
+  /**
+   * Creates a new GlobPatterns.
+   *
+   * @param pattern the regular expression
+   * @param negated for each capturing group of the regular expression, whether it is negated
+   */
+  private GlobPatterns(Pattern pattern, boolean[] negated) {
+    this.pattern = pattern;
+    this.negated = negated;
+  }
+
+  /**
+   * Compiles the given patterns, such as the lines of a .gitignore file.
+   *
+   * @param lines the patterns
+   * @return the compiled patterns, or null if there are none
+   */
+  static @Nullable GlobPatterns compile(List<String> lines) {
+    List<String> regexes = new ArrayList<>();
+    List<Boolean> negations = new ArrayList<>();
+    for (String line : lines) {
+      String glob = trim(line);
+      if (glob.isEmpty() || glob.startsWith("#")) {
+        continue;
+      }
+      boolean isNegated = glob.startsWith("!");
+      if (isNegated) {
+        glob = glob.substring(1);
+      }
+      boolean directoryOnly = glob.endsWith("/") && !glob.endsWith("\\/");
+      if (directoryOnly) {
+        glob = glob.substring(0, glob.length() - 1);
+      }
+      if (glob.isEmpty() || glob.equals("/")) {
+        continue;
+      }
+      boolean anchored = glob.indexOf('/') != -1;
+      if (glob.startsWith("/")) {
+        glob = glob.substring(1);
+      }
+      StringBuilder regex = new StringBuilder();
+      if (!anchored) {
+        regex.append("(?:.*/)?");
+      }
+      appendGlob(glob, regex);
+      regex.append(directoryOnly ? "/" : "/?");
+      regexes.add(regex.toString());
+      negations.add(isNegated);
+    }
+    if (regexes.isEmpty()) {
+      return null;
+    }
+
+    StringBuilder alternation = new StringBuilder();
+    boolean[] negated = new boolean[regexes.size()];
+    for (int i = regexes.size() - 1, group = 0; i >= 0; i--, group++) {
+      if (alternation.length() != 0) {
+        alternation.append('|');
+      }
+      alternation.append('(').append(regexes.get(i)).append(')');
+      negated[group] = negations.get(i);
+    }
+    return new GlobPatterns(Pattern.compile(alternation.toString(), Pattern.DOTALL), negated);
+  }
+
+  /**
+   * Removes trailing spaces, unless they are quoted with a backslash, from a pattern.
+   *
+   * @param line a line of a .gitignore file
+   * @return the line without unquoted trailing spaces
+   */
+  private static String trim(String line) {
+    int end = line.length();
+    while (end > 0 && line.charAt(end - 1) == ' ' && !(end > 1 && line.charAt(end - 2) == '\\')) {
+      end--;
+    }
+    return line.substring(0, end);
+  }
+
+  /**
+   * Appends to {@code regex} a regular expression that matches what the glob matches.
+   *
+   * @param glob a glob, without a leading slash or {@code !} or a trailing slash
+   * @param regex where to append the regular expression
+   */
+  private static void appendGlob(String glob, StringBuilder regex) {
+    int length = glob.length();
+    for (int i = 0; i < length; i++) {
+      char c = glob.charAt(i);
+      switch (c) {
+        case '*':
+          if (i + 1 < length && glob.charAt(i + 1) == '*') {
+            boolean atStart = (i == 0 || glob.charAt(i - 1) == '/');
+            i++;
+            if (atStart && i + 1 < length && glob.charAt(i + 1) == '/') {
+              // "**/": any number of directories, including none.
+              regex.append("(?:.*/)?");
+              i++;
+            } else if (atStart && i + 1 == length) {
+              // A trailing "/**": everything inside, but not the directory itself.
+              regex.append(".+");
+            } else {
+              regex.append("[^/]*");
+            }
+          } else {
+            regex.append("[^/]*");
+          }
+          break;
+        case '?':
+          regex.append("[^/]");
+          break;
+        case '[':
+          int close = glob.indexOf(']', i + 2);
+          if (close == -1) {
+            regex.append("\\[");
+          } else {
+            String set = glob.substring(i + 1, close);
+            regex.append('[');
+            if (set.startsWith("!") || set.startsWith("^")) {
+              regex.append('^');
+              set = set.substring(1);
+            }
+            for (int j = 0; j < set.length(); j++) {
+              char s = set.charAt(j);
+              if (s == '\\' || s == '[' || s == ']' || s == '&' || s == '^') {
+                regex.append('\\');
+              }
+              regex.append(s);
+            }
+            regex.append(']');
+            i = close;
+          }
+          break;
+        case '\\':
+          if (i + 1 < length) {
+            i++;
+            c = glob.charAt(i);
+          }
+          regex.append(Pattern.quote(String.valueOf(c)));
+          break;
+        default:
+          if (Character.isLetterOrDigit(c) || c == '/' || c == '_' || c == '-') {
+            regex.append(c);
+          } else {
+            regex.append('\\').append(c);
+          }
+          break;
+      }
+    }
+  }
+
+  /**
+   * Returns whether the patterns exclude the given file or directory.
+   *
+   * @param relativePath the pathname relative to the base directory, with {@code /} as the
+   *     separator
+   * @param isDirectory true if the pathname is that of a directory
+   * @return true if the last pattern that matches excludes the pathname, false if it re-includes
+   *     it, or null if no pattern matches
+   */
+  @Nullable Boolean match(String relativePath, boolean isDirectory) {
+    Matcher matcher = pattern.matcher(isDirectory ? relativePath + "/" : relativePath);
+    if (!matcher.matches()) {
+      return null;
+    }
+    for (int group = 0; group < negated.length; group++) {
+      if (matcher.start(group + 1) != -1) {
+        return !negated[group];
+      }
+    }
+    throw new Error("No group matched " + relativePath);
+  }
+}
@@ -0,0 +1,383 @@
+package org.plumelib.javadoc;
+
+import java.util.Arrays;
+import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
+
+/**
+ * Splits Java source code into the few kinds of tokens that {@link BodyEraser} and {@link
+ * DeclarationScanner} need to distinguish. It skips whitespace and comments, and it records where
+ * the Javadoc comments are.
+ *
+ * <p>Like JavaParser, it counts a tab as one column and {@code \r}, {@code \n}, or {@code \r\n} as
+ * a line terminator, and it does not translate Unicode escapes.
+ */
+final class JavaLexer {
+
+  /** The kinds of tokens that this class distinguishes. */
+  enum Token {
+    /** An identifier or keyword. */
+    IDENTIFIER,
+    /** An opening brace. */
+    LBRACE,
+    /** A closing brace. */
+    RBRACE,
+    /** An opening parenthesis. */
+    LPAREN,
+    /** A closing parenthesis. */
+    RPAREN,
+    /** An opening bracket. */
+    LBRACKET,
+    /** A closing bracket. */
+    RBRACKET,
+    /** A less-than sign. */
+    LT,
+    /** A greater-than sign, which may be part of an operator such as {@code >>} or {@code ->}. */
+    GT,
+    /** A comma. */
+    COMMA,
+    /** A semicolon. */
+    SEMICOLON,
+    /** An equals sign, which is, or is part of, an operator. */
+    EQUALS,
+    /** An at-sign. */
+    AT,
+    /** A period. */
+    DOT,
+    /** A number, string, character, or any other token. */
+    OTHER,
+    /** The end of the source code. */
+    EOF
+  }
+
+  /** The source code. */
+  final char[] source;
+
+  /** The index of the next character to be read by {@link #next}. */
+  int pos = 0;
+
+  /** The kind of the token most recently read by {@link #next}. */
+  Token token = Token.OTHER;
+
+  /** The index of the first character of the token most recently read by {@link #next}. */
+  int start = 0;
+
+  /** The text of the token most recently read by {@link #next}, if it is an identifier. */
+  String identifier = "";
+
+  /**
+   * True if the source code contains something that this lexer might not treat as JavaParser does:
+   * a backslash outside a literal, which may begin a Unicode escape, or a block comment whose text
+   * starts with {@code /**} although it is not a Javadoc comment, such as {@code /*}{@code /** ...
+   * *}{@code /}.
+   */
+  boolean unusual = false;
+
+  /** The start indexes of the Javadoc comments that have been skipped, in increasing order. */
+  private int[] javadocs = new int[16];
+
+  /** The number of elements of {@link #javadocs} that are in use. */
+  private int numJavadocs = 0;
+
+  /** The start index of each line, or null if they have not been computed yet. */
+  private int @MonotonicNonNull [] lineStarts = null;
+
+  /** The number of elements of {@link #lineStarts} that are in use. */
+  private int numLines = 0;
+
+  /**
+   * Creates a new JavaLexer.
+   *
+   * @param source the source code
+   */
+  JavaLexer(char[] source) {
+    this.source = source;
+  }
+
+  /**
+   * Reads the next token, skipping whitespace and comments. Sets {@link #token} and {@link #start},
+   * and {@link #identifier} for an identifier.
+   */
+  void next() {
+    int length = source.length;
+    while (pos < length) {
+      char c = source[pos];
+      if (Character.isWhitespace(c)) {
+        pos++;
+      } else if (c == '/' && pos + 1 < length && source[pos + 1] == '/') {
+        while (pos < length && source[pos] != '\n' && source[pos] != '\r') {
+          pos++;
+        }
+      } else if (c == '/' && pos + 1 < length && source[pos + 1] == '*') {
+        int commentStart = pos;
+        pos += 2;
+        while (pos + 1 < length && !(source[pos] == '*' && source[pos + 1] == '/')) {
+          pos++;
+        }
+        pos = Math.min(pos + 2, length);
+        recordComment(commentStart);
+      } else {
+        break;
+      }
+    }
+    start = pos;
+    if (pos >= length) {
+      token = Token.EOF;
+      return;
+    }
+    char c = source[pos++];
+    switch (c) {
+      case '{':
+        token = Token.LBRACE;
+        return;
+      case '}':
+        token = Token.RBRACE;
+        return;
+      case '(':
+        token = Token.LPAREN;
+        return;
+      case ')':
+        token = Token.RPAREN;
+        return;
+      case '[':
+        token = Token.LBRACKET;
+        return;
+      case ']':
+        token = Token.RBRACKET;
+        return;
+      case '<':
+        token = Token.LT;
+        return;
+      case '>':
+        token = Token.GT;
+        return;
+      case ',':
+        token = Token.COMMA;
+        return;
+      case ';':
+        token = Token.SEMICOLON;
+        return;
+      case '=':
+        token = Token.EQUALS;
+        return;
+      case '@':
+        token = Token.AT;
+        return;
+      case '.':
+        token = Token.DOT;
+        return;
+      case '"':
+        if (pos + 1 < length && source[pos] == '"' && source[pos + 1] == '"') {
+          skipTextBlock();
+        } else {
+          skipQuoted('"');
+        }
+        token = Token.OTHER;
+        return;
+      case '\'':
+        skipQuoted('\'');
+        token = Token.OTHER;
+        return;
+      case '\\':
+        unusual = true;
+        token = Token.OTHER;
+        return;
+      default:
+        if (Character.isJavaIdentifierStart(c)) {
+          while (pos < length && Character.isJavaIdentifierPart(source[pos])) {
+            pos++;
+          }
+          identifier = new String(source, start, pos - start);
+          token = Token.IDENTIFIER;
+        } else if (Character.isDigit(c)) {
+          while (pos < length && Character.isJavaIdentifierPart(source[pos])) {
+            pos++;
+          }
+          token = Token.OTHER;
+        } else {
+          token = Token.OTHER;
+        }
+        return;
+    }
+  }
+
+  /**
+   * Returns the kind of the token after the current one, without reading it.
+   *
+   * @return the kind of the next token
+   */
+  Token peek() {
+    int savedPos = pos;
+    int savedStart = start;
+    Token savedToken = token;
+    String savedIdentifier = identifier;
+    next();
+    Token result = token;
+    pos = savedPos;
+    start = savedStart;
+    token = savedToken;
+    identifier = savedIdentifier;
+    return result;
+  }
+
+  /**
+   * Returns true if the current token is the given identifier or keyword.
+   *
+   * @param keyword an identifier or keyword
+   * @return true if the current token is the given identifier or keyword
+   */
+  boolean is(String keyword) {
+    return token == Token.IDENTIFIER && identifier.equals(keyword);
+  }
+
+  /**
+   * Returns the character at the start of the current token.
+   *
+   * @return the character at the start of the current token
+   */
+  char firstChar() {
+    return source[start];
+  }
+
+  /**
+   * Records a block comment that was just skipped.
+   *
+   * @param commentStart the index of the start of the comment
+   */
+  private void recordComment(int commentStart) {
+    int length = pos - commentStart;
+    if (length == 5 && source[commentStart + 2] == '*') {
+      // "/***/", which JavaParser's lexer might not treat as this one does.
+      unusual = true;
+      return;
+    }
+    if (length < 6 || source[commentStart + 2] != '*') {
+      // A block comment, or "/**/", which JavaParser also treats as a block comment.
+      if (length >= 5
+          && source[commentStart + 2] == '/'
+          && source[commentStart + 3] == '*'
+          && source[commentStart + 4] == '*') {
+        unusual = true;
+      }
+      return;
+    }
+    if (numJavadocs > 0 && javadocs[numJavadocs - 1] >= commentStart) {
+      // The comment was read before, by a lookahead.
+      return;
+    }
+    if (numJavadocs == javadocs.length) {
+      javadocs = Arrays.copyOf(javadocs, javadocs.length * 2);
+    }
+    javadocs[numJavadocs++] = commentStart;
+  }
+
+  /**
+   * Returns true if a Javadoc comment that has been skipped starts within the given range.
+   *
+   * @param from the start of the range, inclusive
+   * @param to the end of the range, exclusive
+   * @return true if a Javadoc comment starts within the range
+   */
+  boolean hasJavadocBetween(int from, int to) {
+    int low = 0;
+    int high = numJavadocs;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (javadocs[mid] < from) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low < numJavadocs && javadocs[low] < to;
+  }
+
+  /**
+   * Returns the line number of the given index, as JavaParser numbers lines.
+   *
+   * @param index an index into the source code
+   * @return the 1-based line number of the index
+   */
+  int line(int index) {
+    int[] lineStarts = getLineStarts();
+    int low = 0;
+    int high = numLines;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (lineStarts[mid] <= index) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Returns the column number of the given index, as JavaParser numbers columns.
+   *
+   * @param index an index into the source code
+   * @return the 1-based column number of the index
+   */
+  int column(int index) {
+    return index - getLineStarts()[line(index) - 1] + 1;
+  }
+
+  /**
+   * Returns {@link #lineStarts}, computing it if necessary.
+   *
+   * @return the start index of each line
+   */
+  private int[] getLineStarts() {
+    if (lineStarts != null) {
+      return lineStarts;
+    }
+    int[] starts = new int[64];
+    int n = 0;
+    starts[n++] = 0;
+    int length = source.length;
+    for (int i = 0; i < length; i++) {
+      char c = source[i];
+      if (c == '\n' || (c == '\r' && (i + 1 == length || source[i + 1] != '\n'))) {
+        if (n == starts.length) {
+          starts = Arrays.copyOf(starts, n * 2);
+        }
+        starts[n++] = i + 1;
+      }
+    }
+    lineStarts = starts;
+    numLines = n;
+    return starts;
+  }
+
+  /**
+   * Skips a string or character literal, whose opening quote was just read.
+   *
+   * @param quote the quote character
+   */
+  private void skipQuoted(char quote) {
+    int length = source.length;
+    while (pos < length) {
+      char c = source[pos++];
+      if (c == '\\') {
+        pos++;
+      } else if (c == quote || c == '\n' || c == '\r') {
+        return;
+      }
+    }
+  }
+
+  /** Skips a text block, whose first quote was just read. */
+  private void skipTextBlock() {
+    int length = source.length;
+    pos += 2;
+    while (pos < length) {
+      char c = source[pos++];
+      if (c == '\\') {
+        pos++;
+      } else if (c == '"' && pos + 1 < length && source[pos] == '"' && source[pos + 1] == '"') {
+        pos += 2;
+        return;
+      }
+    }
+  }
+}
@@ -1,19 +1,45 @@
 package org.plumelib.javadoc;
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
-import com.google.gson.stream.JsonReader;
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.JavaToken;
+import com.github.javaparser.ParseProblemException;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.Range;
+import com.github.javaparser.TokenRange;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.CompactConstructorDeclaration;
+import com.github.javaparser.ast.body.ConstructorDeclaration;
+import com.github.javaparser.ast.body.InitializerDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
+import com.google.gson.stream.JsonWriter;
 import java.io.BufferedReader;
 import java.io.File;
-import java.lang.reflect.Type;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
-import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.checkerframework.checker.signedness.qual.Signed;
 
 /**
@@ -21,7 +47,15 @@ import org.checkerframework.checker.signedness.qual.Signed;
  * an edit. It returns a map (filename &rarr; changed lines) for lines that implement changed
  * methods.
  *
- * <p>The input and output are in JSON files.
+ * <p>The input is a JSON file, or a unified diff such as {@code git diff} prints, whose added lines
+ * are the changed lines. Either may be read from standard input, if its name is {@code -}. File
+ * names in a diff lose the {@code a/} and {@code b/} prefixes that {@code git diff} adds, so they
+ * are relative to the top of the git working tree. The output is a JSON file.
+ *
+ * <p>In the output, each file's lines are an array of line numbers, such as {@code [3,4,5,6,9]}.
+ * With the {@code --ranges} command-line argument, they are instead an array of maximal intervals
+ * of consecutive lines, each an array of its first and last line, such as {@code [[3,6],[9,9]]}.
+ * {@link #read} reads either form, as does the input of this program.
  *
  * <p>More specifically, do this for every edited line:
  *
@@ -33,6 +67,15 @@ import org.checkerframework.checker.signedness.qual.Signed;
  *   <li>If so, the output contains all the lines that implement changed methods. (This includes
  *       method annotations and the formal parameter list.)
  * </ul>
+ *
+ * <p>Constructors and initializers count as methods. A line is within a body if it contains part of
+ * the body other than its braces. So an edit on the line of the opening brace, such as to the
+ * signature, does not count unless the body's contents start on that line, as in {@code int size()
+ * { return n; }}. A method declared within the body of another method is part of the other method.
+ *
+ * <p>Files whose names do not end with {@code .java}, and files that do not exist, have no methods.
+ * A file that has no lines in changed methods is omitted from the output. The files are processed
+ * concurrently, each with one parse.
  */
 public class LinesInChangedMethods {
 
@@ -41,47 +84,333 @@ public class LinesInChangedMethods {
     throw new Error("do not instantiate");
   }
 
-  // Implementation approach:
-  // For each filename:
-  //   Read the file and create a map (line -> line) that maps from a line within a method body to a
-  // set of lines that implement the method body.
-  //   For each line in the input map, add the appropriate lines to the output map.
-
   /**
    * Implements the logic of the class; see class Javadoc.
    *
-   * @param args command-line arguments: input filename and output filename
+   * @param args command-line arguments: optionally {@code --ranges}, then input filename, or {@code
+   *     -} for standard input, and output filename
    */
   public static void main(String[] args) {
+    boolean ranges = (args.length > 0 && args[0].equals("--ranges"));
+    if (ranges) {
+      args = Arrays.copyOfRange(args, 1, args.length);
+    }
     if (args.length != 2) {
       System.err.printf(
           "LinesInChangedMethods received %d arguments: %s%n", args.length, Arrays.toString(args));
       System.err.printf(
-          "LinesInChangedMethods expects two arguments: input filename and output filename.");
+          "LinesInChangedMethods expects two arguments, optionally preceded by --ranges:"
+              + " input filename and output filename.");
       System.exit(1);
     }
 
     String infileName = args[0];
     String outfileName = args[1];
-    if (!new File(infileName).exists()) {
+    boolean isStdin = infileName.equals("-");
+    if (!isStdin && !new File(infileName).exists()) {
       System.err.printf("File does not exist: %s%n", infileName);
       System.exit(1);
     }
 
-    @NonNull Map<String, Set<Integer>> map;
+    // The diff or JSON is read as a stream, straight into a bit set per file.
+    Map<String, BitSet> changedLines;
     try (BufferedReader bufferedReader =
-            Files.newBufferedReader(Paths.get(infileName), StandardCharsets.UTF_8);
-        JsonReader jsonReader = new JsonReader(bufferedReader)) {
-      Type mapType = new TypeToken<Map<String, Set<Integer>>>() {}.getType();
-      @SuppressWarnings("nullness") // Gson is not annotated
-      @NonNull Map<String, Set<Integer>> son = new Gson().fromJson(jsonReader, mapType);
-      map = son;
+        (isStdin
+            ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+            : Files.newBufferedReader(Paths.get(infileName), StandardCharsets.UTF_8))) {
+      changedLines = ChangedLines.readLines(bufferedReader);
     } catch (Throwable t) {
-      throw new Error("Problem reading " + infileName, t);
+      throw new Error("Problem reading " + (isStdin ? "standard input" : infileName), t);
+    }
+
+    Map<String, BitSet> result = linesInChangedMethods(changedLines);
+
+    try (Writer writer = Files.newBufferedWriter(Paths.get(outfileName), StandardCharsets.UTF_8)) {
+      write(result, writer, ranges);
+    } catch (IOException e) {
+      throw new Error("Problem writing " + outfileName, e);
+    }
+  }
+
+  /**
+   * Reads a map (filename &rarr; lines), as this program writes it: a JSON object whose values are
+   * arrays of line numbers, of {@code [start,end]} intervals, or of both. A unified diff is also
+   * accepted; its added lines are the lines of each file.
+   *
+   * @param reader the JSON object or unified diff; not closed
+   * @return the lines of each file, by file name, in the order in which the files first appear
+   * @throws IOException if the input cannot be read or is not well-formed
+   */
+  public static Map<String, BitSet> read(Reader reader) throws IOException {
+    return ChangedLines.readLines(reader);
+  }
+
+  /**
+   * Writes a map (filename &rarr; lines) as a JSON object, one token at a time.
+   *
+   * @param lines the lines of each file, by file name
+   * @param writer where to write the JSON; not closed
+   * @param ranges if true, write each file's lines as an array of {@code [start,end]} intervals of
+   *     consecutive lines; if false, as an array of line numbers
+   * @throws IOException if the JSON cannot be written
+   */
+  public static void write(Map<String, BitSet> lines, Writer writer, boolean ranges)
+      throws IOException {
+    JsonWriter jsonWriter = new JsonWriter(writer);
+    jsonWriter.beginObject();
+    for (Map.Entry<String, BitSet> entry : lines.entrySet()) {
+      jsonWriter.name(entry.getKey());
+      jsonWriter.beginArray();
+      BitSet fileLines = entry.getValue();
+      for (int start = fileLines.nextSetBit(0); start >= 0; ) {
+        int end = fileLines.nextClearBit(start);
+        if (ranges) {
+          jsonWriter.beginArray().value(start).value(end - 1).endArray();
+        } else {
+          for (int line = start; line < end; line++) {
+            jsonWriter.value(line);
+          }
+        }
+        start = fileLines.nextSetBit(end);
+      }
+      jsonWriter.endArray();
+    }
+    jsonWriter.endObject();
+    jsonWriter.flush();
+  }
+
+  /**
+   * Returns the lines that implement changed methods. The files are processed concurrently.
+   *
+   * @param changedLines the edited lines of each file, by file name
+   * @return the lines of the methods that contain an edited line, by file name, in the order of
+   *     {@code changedLines}; files with no such lines are omitted
+   */
+  static Map<String, BitSet> linesInChangedMethods(Map<String, BitSet> changedLines) {
+    int numThreads = Math.min(Runtime.getRuntime().availableProcessors(), changedLines.size());
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(numThreads, 1));
+    try {
+      Map<String, Future<BitSet>> futures = new LinkedHashMap<>();
+      for (Map.Entry<String, BitSet> entry : changedLines.entrySet()) {
+        String fileName = entry.getKey();
+        BitSet lines = entry.getValue();
+        futures.put(fileName, executor.submit(() -> linesInChangedMethods(fileName, lines)));
+      }
+      Map<String, BitSet> result = new LinkedHashMap<>();
+      for (Map.Entry<String, Future<BitSet>> entry : futures.entrySet()) {
+        BitSet lines;
+        try {
+          lines = entry.getValue().get();
+        } catch (ExecutionException e) {
+          throw new Error("Problem reading " + entry.getKey(), e.getCause());
+        } catch (InterruptedException e) {
+          throw new Error(e);
+        }
+        if (!lines.isEmpty()) {
+          result.put(entry.getKey(), lines);
+        }
+      }
+      return result;
+    } finally {
+      executor.shutdownNow();
     }
+  }
 
-    System.out.println(outfileName);
-    System.out.println(mapToString(map));
+  /**
+   * Returns the lines of one file that implement changed methods.
+   *
+   * @param fileName the name of a file
+   * @param changedLines the edited lines of the file
+   * @return the lines of the methods that contain an edited line
+   * @throws IOException if the file cannot be read
+   * @throws ParseProblemException if the file cannot be parsed
+   */
+  private static BitSet linesInChangedMethods(String fileName, BitSet changedLines)
+      throws IOException {
+    BitSet result = new BitSet();
+    Path file = Paths.get(fileName);
+    if (changedLines.isEmpty() || !fileName.endsWith(".java") || !Files.isRegularFile(file)) {
+      return result;
+    }
+    String contents = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    ParseResult<CompilationUnit> parseResult = javaParser.get().parse(contents);
+    Optional<CompilationUnit> cu = parseResult.getResult();
+    if (!parseResult.isSuccessful() || !cu.isPresent()) {
+      throw new ParseProblemException(parseResult.getProblems());
+    }
+    MethodIndex index = new MethodIndex(cu.get());
+    for (int line = changedLines.nextSetBit(0);
+        line >= 0;
+        line = changedLines.nextSetBit(line + 1)) {
+      index.addMethodsContaining(line, result);
+    }
+    return result;
+  }
+
+  /**
+   * A parser for each thread that processes files. It neither attributes comments nor preserves
+   * lexical information, but it stores tokens, which locate the contents of bodies.
+   */
+  private static final ThreadLocal<JavaParser> javaParser =
+      ThreadLocal.withInitial(
+          () -> {
+            ParserConfiguration configuration = new ParserConfiguration();
+            configuration.setLanguageLevel(ParserConfiguration.LanguageLevel.JAVA_17);
+            configuration.setAttributeComments(false);
+            configuration.setStoreTokens(true);
+            configuration.setDetectOriginalLineSeparator(false);
+            configuration.setLexicalPreservationEnabled(false);
+            return new JavaParser(configuration);
+          });
+
+  /**
+   * An interval index of the bodies of the methods, constructors, and initializers in one file.
+   * Only the outermost bodies are recorded, because a method within a body is part of the method
+   * that contains it. Outermost bodies do not overlap, except that one may end on the line where
+   * the next begins, so sorting them by their first lines also sorts them by their last lines, and
+   * finding those that contain a line is a binary search.
+   */
+  static final class MethodIndex {
+
+    /** The first line of each body, in increasing order. */
+    private final int[] bodyFirst;
+
+    /** The last line of each body, in increasing order. */
+    private final int[] bodyLast;
+
+    /** The first line of the method whose body is at the same index. */
+    private final int[] first;
+
+    /** The last line of the method whose body is at the same index. */
+    private final int[] last;
+
+    /**
+     * Creates a MethodIndex.
+     *
+     * @param cu a compilation unit, whose tokens were stored when it was parsed
+     */
+    MethodIndex(CompilationUnit cu) {
+      List<int[]> methods = new ArrayList<>();
+      cu.accept(new MethodCollector(), methods);
+      methods.sort(Comparator.comparingInt((int[] method) -> method[0]));
+      int size = methods.size();
+      bodyFirst = new int[size];
+      bodyLast = new int[size];
+      first = new int[size];
+      last = new int[size];
+      for (int i = 0; i < size; i++) {
+        int[] method = methods.get(i);
+        bodyFirst[i] = method[0];
+        bodyLast[i] = method[1];
+        first[i] = method[2];
+        last[i] = method[3];
+      }
+    }
+
+    /**
+     * Adds to {@code result} the lines of every method whose body contains the given line.
+     *
+     * @param line a line number
+     * @param result where to add the lines of the methods
+     */
+    void addMethodsContaining(int line, BitSet result) {
+      // Find the first body that ends at or after the line.
+      int low = 0;
+      int high = bodyLast.length;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (bodyLast[mid] < line) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      for (int i = low; i < bodyFirst.length && bodyFirst[i] <= line; i++) {
+        result.set(first[i], last[i] + 1);
+      }
+    }
+  }
+
+  /**
+   * Collects, for each outermost method, constructor, and initializer with a non-empty body, the
+   * first and last lines of its body and of its declaration. It does not visit bodies.
+   */
+  private static final class MethodCollector extends VoidVisitorAdapter<List<int[]>> {
+
+    @Override
+    public void visit(MethodDeclaration md, List<int[]> methods) {
+      Optional<BlockStmt> body = md.getBody();
+      if (body.isPresent()) {
+        add(md, body.get(), methods);
+      } else {
+        super.visit(md, methods);
+      }
+    }
+
+    @Override
+    public void visit(ConstructorDeclaration cd, List<int[]> methods) {
+      add(cd, cd.getBody(), methods);
+    }
+
+    @Override
+    public void visit(CompactConstructorDeclaration ccd, List<int[]> methods) {
+      add(ccd, ccd.getBody(), methods);
+    }
+
+    @Override
+    public void visit(InitializerDeclaration id, List<int[]> methods) {
+      add(id, id.getBody(), methods);
+    }
+
+    /**
+     * Records a method whose body is not empty.
+     *
+     * @param declaration a method, constructor, or initializer
+     * @param body its body
+     * @param methods where to record the lines of the body and of the declaration
+     */
+    private static void add(Node declaration, BlockStmt body, List<int[]> methods) {
+      Optional<Range> range = declaration.getRange();
+      Optional<TokenRange> tokens = body.getTokenRange();
+      if (!range.isPresent() || !tokens.isPresent()) {
+        return;
+      }
+      JavaToken open = tokens.get().getBegin();
+      JavaToken close = tokens.get().getEnd();
+      JavaToken firstToken = nonWhitespace(open.getNextToken(), true);
+      JavaToken lastToken = nonWhitespace(close.getPreviousToken(), false);
+      if (firstToken == null || lastToken == null || firstToken == close) {
+        // The body contains only whitespace.
+        return;
+      }
+      Optional<Range> firstRange = firstToken.getRange();
+      Optional<Range> lastRange = lastToken.getRange();
+      if (!firstRange.isPresent() || !lastRange.isPresent()) {
+        return;
+      }
+      methods.add(
+          new int[] {
+            firstRange.get().begin.line,
+            lastRange.get().end.line,
+            range.get().begin.line,
+            range.get().end.line
+          });
+    }
+
+    /**
+     * Returns the first token, going forward or backward, that is not whitespace. Comments are not
+     * whitespace.
+     *
+     * @param token the token to start at
+     * @param forward true to go forward, false to go backward
+     * @return the first token that is not whitespace, or null if there is none
+     */
+    private static @Nullable JavaToken nonWhitespace(Optional<JavaToken> token, boolean forward) {
+      while (token.isPresent() && token.get().getCategory().isWhitespace()) {
+        token = (forward ? token.get().getNextToken() : token.get().getPreviousToken());
+      }
+      return token.orElse(null);
+    }
   }
 
   /**
@@ -0,0 +1,156 @@
+package org.plumelib.javadoc;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
+
+/**
+ * A compact collection of file pathnames, which yields them in the order of their pathnames as
+ * strings. Pathnames are stored as a tree of directories, so a directory's pathname is stored once
+ * no matter how many files it contains, and directory names are interned, so a name such as {@code
+ * java} or {@code util} is stored once no matter how many directories have it. No {@link Path} is
+ * retained.
+ *
+ * <p>Like a list, a PathTrie may contain the same pathname more than once.
+ *
+ * <p>A PathTrie is not thread-safe.
+ */
+final class PathTrie {
+
+  /** The directory that contains every pathname; its key is the empty string. */
+  private final Directory top = new Directory("");
+
+  /** The distinct keys of the directories, so that equal keys share storage. */
+  private final Map<String, String> keys = new HashMap<>();
+
+  /** Creates a new, empty PathTrie. */
+  PathTrie() {}
+
+  /**
+   * Adds a pathname.
+   *
+   * @param file the pathname of a file
+   */
+  void add(Path file) {
+    String pathname = file.toString();
+    Directory dir = top;
+    int start = 0;
+    Path root = file.getRoot();
+    if (root != null) {
+      // The root, such as "/", ends with a separator, as the key of a directory does.
+      start = root.toString().length();
+      dir = dir.subdirectory(pathname.substring(0, start));
+    }
+    int end;
+    while ((end = pathname.indexOf(File.separatorChar, start)) != -1) {
+      dir = dir.subdirectory(pathname.substring(start, end + 1));
+      start = end + 1;
+    }
+    dir.addFile(pathname.substring(start));
+  }
+
+  /**
+   * Passes each pathname to the consumer, in the order of the pathnames as strings.
+   *
+   * @param consumer receives each pathname
+   */
+  void forEach(Consumer<Path> consumer) {
+    top.forEach(new StringBuilder(), consumer);
+  }
+
+  /** A directory, with the names of the files in it and its subdirectories. */
+  private final class Directory {
+
+    /**
+     * The directory's name, followed by a separator. As a sort key, this orders the directory among
+     * its siblings the way its files' pathnames are ordered among theirs.
+     */
+    final String key;
+
+    /** The subdirectories, by key, or null if there are none. */
+    @MonotonicNonNull Map<String, Directory> subdirectories = null;
+
+    /** The names of the files directly in this directory, or null if there are none. */
+    @MonotonicNonNull List<String> files = null;
+
+    /**
+     * Creates a new Directory.
+     *
+     * @param key the directory's name, followed by a separator
+     */
+    Directory(String key) {
+      this.key = key;
+    }
+
+    /**
+     * Returns a subdirectory, creating it if necessary.
+     *
+     * @param key the subdirectory's name, followed by a separator
+     * @return the subdirectory
+     */
+    Directory subdirectory(String key) {
+      if (subdirectories == null) {
+        subdirectories = new HashMap<>();
+      }
+      Directory result = subdirectories.get(key);
+      if (result == null) {
+        String interned = keys.putIfAbsent(key, key);
+        result = new Directory(interned == null ? key : interned);
+        subdirectories.put(result.key, result);
+      }
+      return result;
+    }
+
+    /**
+     * Adds a file directly in this directory.
+     *
+     * @param name the file's name
+     */
+    void addFile(String name) {
+      if (files == null) {
+        files = new ArrayList<>();
+      }
+      files.add(name);
+    }
+
+    /**
+     * Passes each pathname under this directory to the consumer, in the order of the pathnames as
+     * strings. Files and subdirectories are sorted by their names and keys, which never have one
+     * another as a prefix, so their order is that of the pathnames under them.
+     *
+     * @param prefix the pathname of this directory's parent, followed by a separator; restored
+     *     before this method returns
+     * @param consumer receives each pathname
+     */
+    void forEach(StringBuilder prefix, Consumer<Path> consumer) {
+      int length = prefix.length();
+      prefix.append(key);
+      List<String> files = (this.files == null ? Collections.emptyList() : this.files);
+      List<Directory> dirs =
+          (subdirectories == null
+              ? Collections.emptyList()
+              : new ArrayList<>(subdirectories.values()));
+      Collections.sort(files);
+      dirs.sort(Comparator.comparing(dir -> dir.key));
+      int f = 0;
+      int d = 0;
+      while (f < files.size() || d < dirs.size()) {
+        if (d == dirs.size() || (f < files.size() && files.get(f).compareTo(dirs.get(d).key) < 0)) {
+          consumer.accept(Paths.get(prefix.append(files.get(f++)).toString()));
+          prefix.setLength(length + key.length());
+        } else {
+          dirs.get(d++).forEach(prefix, consumer);
+        }
+      }
+      prefix.setLength(length);
+    }
+  }
+}
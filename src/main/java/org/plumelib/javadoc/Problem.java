@@ -0,0 +1,75 @@
+package org.plumelib.javadoc;
+
+import java.nio.file.Path;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A problem that prevented checking the files: a file that does not exist or cannot be read or
+ * parsed. Immutable.
+ */
+public final class Problem {
+
+  /** The kinds of problems. */
+  public enum Kind {
+    /** A file or directory given to be checked does not exist. */
+    FILE_NOT_FOUND,
+    /** A file or directory could not be read. */
+    UNREADABLE,
+    /** A Java file could not be parsed. */
+    UNPARSEABLE
+  }
+
+  /** The kind of problem. */
+  private final Kind kind;
+
+  /** The file or directory that has the problem, or null if it is not known. */
+  private final @Nullable Path file;
+
+  /** The message describing the problem, as the command-line program prints it. */
+  private final String message;
+
+  /**
+   * Creates a new Problem.
+   *
+   * @param kind the kind of problem
+   * @param file the file or directory that has the problem, or null if it is not known
+   * @param message the message describing the problem
+   */
+  Problem(Kind kind, @Nullable Path file, String message) {
+    this.kind = kind;
+    this.file = file;
+    this.message = message;
+  }
+
+  /**
+   * Returns the kind of problem.
+   *
+   * @return the kind of problem
+   */
+  public Kind getKind() {
+    return kind;
+  }
+
+  /**
+   * Returns the file or directory that has the problem, or null if it is not known.
+   *
+   * @return the file or directory that has the problem, or null
+   */
+  public @Nullable Path getFile() {
+    return file;
+  }
+
+  /**
+   * Returns the message describing the problem, as the command-line program prints it.
+   *
+   * @return the message describing the problem
+   */
+  public String getMessage() {
+    return message;
+  }
+
+  @Override
+  public String toString() {
+    return message;
+  }
+}
@@ -1,12 +1,12 @@
 package org.plumelib.javadoc;
 
-import static com.github.javaparser.utils.PositionUtils.sortByBeginPosition;
-
+import com.github.javaparser.JavaParser;
 import com.github.javaparser.ParseProblemException;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ParseStart;
 import com.github.javaparser.ParserConfiguration;
 import com.github.javaparser.Position;
 import com.github.javaparser.Range;
-import com.github.javaparser.StaticJavaParser;
 import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.Node;
 import com.github.javaparser.ast.NodeList;
@@ -14,10 +14,12 @@ import com.github.javaparser.ast.PackageDeclaration;
 import com.github.javaparser.ast.body.AnnotationDeclaration;
 import com.github.javaparser.ast.body.AnnotationMemberDeclaration;
 import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.CompactConstructorDeclaration;
 import com.github.javaparser.ast.body.ConstructorDeclaration;
 import com.github.javaparser.ast.body.EnumConstantDeclaration;
 import com.github.javaparser.ast.body.EnumDeclaration;
 import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.InitializerDeclaration;
 import com.github.javaparser.ast.body.MethodDeclaration;
 import com.github.javaparser.ast.body.Parameter;
 import com.github.javaparser.ast.body.RecordDeclaration;
@@ -38,22 +40,60 @@ import com.github.javaparser.ast.stmt.Statement;
 import com.github.javaparser.ast.type.PrimitiveType;
 import com.github.javaparser.ast.type.Type;
 import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileVisitResult;
-import java.nio.file.FileVisitor;
 import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 import org.checkerframework.checker.nullness.qual.NonNull;
@@ -69,10 +109,51 @@ import org.plumelib.options.Options;
  */
 public class RequireJavadoc {
 
+  /**
+   * A file that lists directories and files to check, in addition to those on the command line, or
+   * "-" for standard input. The listed files are checked as the list is read, in the order in which
+   * they are listed.
+   */
+  @Option("File listing directories and files to check, one per line; - means standard input")
+  public @MonotonicNonNull String files_from = null;
+
+  /** If true, the entries of {@link #files_from} are terminated by NUL rather than by newline. */
+  @Option("Entries of --files-from are terminated by NUL rather than by newline")
+  public boolean zero_terminated = false;
+
+  /**
+   * A git ref, such as {@code origin/main}. If it is given, only the files that have changed since
+   * the merge base of the ref and {@code HEAD}, including staged, unstaged, and untracked files,
+   * are checked.
+   */
+  @Option("Check only files changed since the merge base of the git ref and HEAD")
+  public @MonotonicNonNull String since = null;
+
+  /**
+   * A file that lists the changed lines of each file, or "-" for standard input. It is either a
+   * unified diff, as printed by {@code git diff}, or a JSON object that maps each file name to an
+   * array of line numbers. If it is given, only files with a changed line are checked, and only
+   * declarations that contain a changed line are reported.
+   */
+  @Option("Report only declarations that overlap the changed lines in this diff or JSON file")
+  public @MonotonicNonNull String changed_lines = null;
+
   /** Matches name of file or directory where no problems should be reported. */
   @Option("Don't check files or directories whose pathname matches the regex")
   public @MonotonicNonNull Pattern exclude = null;
 
+  /**
+   * Globs, in the syntax of a .gitignore file, matching files or directories where no problems
+   * should be reported. They are matched against pathnames relative to each directory listed on the
+   * command line, and against the name of each file listed on the command line.
+   */
+  @Option("Don't check files or directories that match the .gitignore-style glob")
+  public List<String> exclude_glob = new ArrayList<>();
+
+  /** If true, don't check files or directories that .gitignore files ignore. */
+  @Option("Don't check files or directories that a .gitignore file ignores")
+  public boolean use_gitignore = false;
+
   // TODO: It would be nice to support matching fully-qualified class names, but matching
   // packages will have to do for now.
   /**
@@ -140,6 +221,13 @@ public class RequireJavadoc {
   @Option("Don't report problems in methods and constructors")
   public boolean dont_require_method;
 
+  /**
+   * If true, don't check local and anonymous classes, or their members. Method bodies and
+   * initializers are then never visited.
+   */
+  @Option("Don't report problems in local and anonymous classes")
+  public boolean dont_require_local_class;
+
   /** If true, warn if any package lacks a package-info.java file. */
   @Option("Require package-info.java file to exist")
   public boolean require_package_info;
@@ -151,215 +239,1894 @@ public class RequireJavadoc {
   @Option("Report relative rather than absolute filenames")
   public boolean relative = false;
 
-  /** If true, output debug information. */
-  @Option("Print diagnostic information")
-  public boolean verbose = false;
+  /**
+   * If true, don't parse the bodies of methods, constructors, and initializers, except those that
+   * declare local or anonymous classes and those of possibly trivial getters and setters. This is
+   * faster, and the reported errors are the same, but syntax errors within the bodies are not
+   * reported.
+   */
+  @Option("Don't parse method bodies; faster, but syntax errors in them are not reported")
+  public boolean skip_method_bodies = false;
+
+  /**
+   * If true, find declarations with a lexical scanner, and parse only the files that it cannot
+   * handle.
+   */
+  @Option(
+      "Don't parse files when a scanner suffices; faster, but most syntax errors are unreported")
+  public boolean fast_scan = false;
+
+  /** If true, output debug information. */
+  @Option("Print diagnostic information")
+  public boolean verbose = false;
+
+  /**
+   * The number of files to check concurrently. A value of 1 checks the files one at a time on the
+   * main thread. A value less than 1 uses one thread per available processor. With more than one
+   * thread, as many directories are also read concurrently. The output does not depend on this
+   * value.
+   */
+  @Option("Number of files to check concurrently; 0 means one per processor")
+  public int jobs = 1;
+
+  /**
+   * If positive, stop after reporting this many errors, without checking the remaining files. The
+   * exit status is 1, as when all files were checked and errors were found.
+   */
+  @Option("Stop after reporting this many errors; 0 means no limit")
+  public int max_errors = 0;
+
+  /** If true, stop after reporting the first error. Equivalent to {@code --max-errors=1}. */
+  @Option("Stop after reporting the first error")
+  public boolean first_error = false;
+
+  /**
+   * A file that records which Java files had errors in previous runs. It is updated after each run.
+   * When there is a limit on the number of errors, the recorded files are checked before other
+   * files, so that a run that is going to fail does so quickly.
+   */
+  @Option("File recording which files had errors; with an error limit, those are checked first")
+  public @MonotonicNonNull String error_history = null;
+
+  /**
+   * A file that records the errors in each Java file, such as {@code
+   * build/require-javadoc-cache.json}. A file whose size, modification time, and contents are
+   * unchanged since the previous run is not parsed again. The record is discarded if the value of
+   * any option that affects the errors has changed.
+   */
+  @Option("File recording the errors in each file, so unchanged files are not parsed again")
+  public @MonotonicNonNull String cache_file = null;
+
+  /**
+   * A directory that records the errors in Java files, keyed by their contents. A file whose
+   * contents were checked before, under any name and by any process using the same directory and
+   * the same options, is not parsed again. Several processes may use the directory at once.
+   */
+  @Option("Directory, shareable between checkouts, recording the errors in files by their contents")
+  public @MonotonicNonNull String cache_dir = null;
+
+  /**
+   * The maximum size of {@link #cache_dir}, in bytes. When it is exceeded, the least recently used
+   * entries are deleted. 0 means no limit.
+   */
+  @Option("Maximum size of the --cache-dir directory in bytes; 0 means no limit")
+  public long cache_dir_max_bytes = 1L << 30;
+
+  /**
+   * The options that affect how this program runs, but not the errors it finds in a file. The other
+   * options are part of the fingerprint of a {@link ResultCache} or {@link SharedCache}.
+   */
+  private static final Set<String> EXECUTION_OPTIONS =
+      new HashSet<>(
+          Arrays.asList(
+              "files_from",
+              "zero_terminated",
+              "since",
+              "changed_lines",
+              "verbose",
+              "jobs",
+              "max_errors",
+              "first_error",
+              "error_history",
+              "cache_file",
+              "cache_dir",
+              "cache_dir_max_bytes"));
+
+  /** Where {@code --files-from=-} reads the list of files, or null if there is no such stream. */
+  private @Nullable InputStream stdin = System.in;
+
+  /** Where errors, problems, and diagnostic information are printed. */
+  private PrintStream stdout = System.out;
+
+  /** Where warnings about the cache files, cache directory, and history file are printed. */
+  private PrintStream stderr = System.err;
+
+  /** Where errors are reported. Buffered; flushed whenever the output stage has to wait. */
+  private PrintWriter out = newPrintWriter(System.out);
+
+  /**
+   * If non-null, every error reported so far, to be returned by {@link #checkQuietly} or recorded
+   * in a {@link ResultCache}. It is null otherwise, so that the errors of a large run are not all
+   * kept in memory.
+   */
+  private @Nullable List<Diagnostic> reportedErrors = null;
+
+  /** The problem that prevented checking the files, or null if there was none. */
+  private @Nullable Problem problem = null;
+
+  /** The number of errors that have been reported. */
+  private int numErrors = 0;
+
+  /** The name of the file that documents a package. */
+  private static final Path PACKAGE_INFO = Paths.get("package-info.java");
+
+  /**
+   * For each directory that contains a Java file, whether it contains a package-info.java file, in
+   * the order in which the directories are first passed on. Written by the discovery thread and
+   * read by the output stage.
+   */
+  private final Map<Path, Boolean> hasPackageInfo =
+      Collections.synchronizedMap(new LinkedHashMap<>());
+
+  /**
+   * The files that have changed since {@link #since}, as real, absolute pathnames, or null if it
+   * was not given.
+   */
+  private @Nullable Set<Path> changedFiles = null;
+
+  /** The lines listed in {@link #changed_lines}, or null if it was not given. */
+  private @Nullable ChangedLines changedLines = null;
+
+  /**
+   * The directories that contain a file with a changed line. When {@link #changed_lines} is given,
+   * a missing package-info.java file is reported only for these directories.
+   */
+  private final Set<Path> changedDirectories = new HashSet<>();
+
+  /** The compiled {@link #exclude_glob} patterns, or null if there are none. */
+  private @Nullable GlobPatterns excludeGlobs = null;
+
+  /**
+   * The .gitignore files that apply under each directory listed on the command line, by its
+   * resolved pathname, so that each .gitignore file is read once per run.
+   */
+  private final ConcurrentHashMap<Path, GitIgnore> gitIgnores = new ConcurrentHashMap<>();
+
+  /** The current working directory, for making relative pathnames. */
+  private Path workingDirRelative = Paths.get("");
+
+  /** The current working directory, for making relative pathnames. */
+  private Path workingDirAbsolute = Paths.get("").toAbsolutePath();
+
+  /**
+   * The working directory of the client, if it differs from that of this process; otherwise null.
+   * Relative pathnames are resolved against it.
+   */
+  private @Nullable Path clientWorkingDir = null;
+
+  /**
+   * The threads that run the stages of the pipeline, shared by the runs of a resident process so
+   * that each thread's parser is reused; or null to create threads for this run only.
+   */
+  private @Nullable ExecutorService workers = null;
+
+  /**
+   * The main entry point for the require-javadoc program. See documentation at <a
+   * href="https://github.com/plume-lib/require-javadoc">https://github.com/plume-lib/require-javadoc</a>.
+   *
+   * @param args the command-line arguments; see the README.md file
+   */
+  public static void main(String[] args) {
+    RequireJavadoc rj = new RequireJavadoc();
+    Options options =
+        new Options(
+            "java org.plumelib.javadoc.RequireJavadoc [options] [directory-or-file ...]", rj);
+    String[] remainingArgs = options.parse(true, args);
+
+    int status = rj.checkJavaFiles(remainingArgs);
+
+    rj.out.flush();
+    System.exit(status);
+  }
+
+  /**
+   * Runs require-javadoc as the main entry point does, but for a client in another process such as
+   * the one started by {@link RequireJavadocClient}, and without exiting.
+   *
+   * @param args the command-line arguments; see the README.md file
+   * @param workingDir the client's working directory, against which relative pathnames are resolved
+   * @param stdout the client's standard output
+   * @param stderr the client's standard error
+   * @param workers the threads that run the stages of the pipeline, as returned by {@link
+   *     #newWorkerPool}
+   * @return the exit status: 0 if there were no errors, 1 if there were errors, 2 if there was a
+   *     problem
+   */
+  static int run(
+      String[] args,
+      Path workingDir,
+      PrintStream stdout,
+      PrintStream stderr,
+      ExecutorService workers) {
+    RequireJavadoc rj = new RequireJavadoc();
+    rj.stdout = stdout;
+    rj.stderr = stderr;
+    rj.workers = workers;
+    // The client's standard input is not sent to the daemon.
+    rj.stdin = null;
+    rj.out = newPrintWriter(stdout);
+    rj.setWorkingDirectory(workingDir);
+    Options options =
+        new Options(
+            "java org.plumelib.javadoc.RequireJavadoc [options] [directory-or-file ...]", rj);
+    String[] remainingArgs;
+    try {
+      remainingArgs = options.parse(args);
+    } catch (Options.ArgException e) {
+      stdout.println(e.getMessage());
+      stdout.println(options.getUsage());
+      return 2;
+    }
+
+    int status = rj.checkJavaFiles(remainingArgs);
+
+    rj.out.flush();
+    return status;
+  }
+
+  /**
+   * Checks the files without printing anything, for {@link Checker}. The options are the values of
+   * this object's fields.
+   *
+   * @param args the directories and files to check
+   * @return the errors and the problem, if any
+   */
+  CheckResult checkQuietly(String[] args) {
+    stdout = new PrintStream(NULL_OUTPUT_STREAM);
+    out = newPrintWriter(stdout);
+    List<Diagnostic> errors = new ArrayList<>();
+    reportedErrors = errors;
+    checkJavaFiles(args);
+    return new CheckResult(errors, problem);
+  }
+
+  /** An output stream that discards what is written to it. */
+  private static final OutputStream NULL_OUTPUT_STREAM =
+      new OutputStream() {
+        @Override
+        public void write(int b) {}
+
+        @Override
+        public void write(byte[] b, int off, int len) {}
+      };
+
+  /** Creates a new RequireJavadoc instance. */
+  RequireJavadoc() {}
+
+  /**
+   * Sets the threads that run the stages of the pipeline.
+   *
+   * @param workers the threads, as returned by {@link #newWorkerPool}
+   */
+  void setWorkers(ExecutorService workers) {
+    this.workers = workers;
+  }
+
+  /**
+   * Returns a pool of threads for the pipelines of many runs, some of which may be concurrent. A
+   * thread that is idle for the given time exits, and with it, its parser.
+   *
+   * <p>The stages of a pipeline wait for each other, so each needs its own thread. The pool
+   * therefore starts a new thread whenever no idle one is available, rather than queueing a stage.
+   * The threads are daemon threads, so they do not keep the JVM running.
+   *
+   * @param keepAliveSeconds how long an idle thread is kept, in seconds
+   * @return a pool of threads for the pipelines of many runs
+   */
+  static ExecutorService newWorkerPool(long keepAliveSeconds) {
+    ThreadFactory threadFactory = Executors.defaultThreadFactory();
+    return new ThreadPoolExecutor(
+        0,
+        Integer.MAX_VALUE,
+        keepAliveSeconds,
+        TimeUnit.SECONDS,
+        new SynchronousQueue<>(),
+        runnable -> {
+          Thread thread = threadFactory.newThread(runnable);
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+
+  /**
+   * Sets the working directory, against which relative pathnames are resolved and relative to which
+   * {@link #relative} reports file names.
+   *
+   * @param workingDir the working directory
+   */
+  void setWorkingDirectory(Path workingDir) {
+    workingDirAbsolute = workingDir.toAbsolutePath();
+    if (!workingDirAbsolute.equals(Paths.get("").toAbsolutePath())) {
+      clientWorkingDir = workingDirAbsolute;
+    }
+  }
+
+  /**
+   * Returns a buffered writer to the given stream, in the default charset.
+   *
+   * @param stream a stream
+   * @return a buffered writer to the stream
+   */
+  private static PrintWriter newPrintWriter(PrintStream stream) {
+    return new PrintWriter(
+        new BufferedWriter(new OutputStreamWriter(stream, Charset.defaultCharset())));
+  }
+
+  /**
+   * Returns the file that the given pathname names. A relative pathname is relative to the client's
+   * working directory.
+   *
+   * @param path a pathname
+   * @return the file that the pathname names, for use in file system operations
+   */
+  private Path resolve(Path path) {
+    return (clientWorkingDir == null ? path : clientWorkingDir.resolve(path));
+  }
+
+  /**
+   * Find the Java files to be processed from the command-line arguments, and pass each of them to
+   * {@code javaFileConsumer} in the order of their pathnames as strings.
+   *
+   * <p>Usually the files are passed on as they are found. If one argument contains another (such as
+   * a directory and a file within it), then all the files are found and sorted first.
+   *
+   * <p>Each of the {@code priorityFiles} that would be found is passed on first, and is not passed
+   * on again when it is found.
+   *
+   * @param args the directories and files listed on the command line
+   * @param priorityFiles files to pass on before any others, if they would be found at all
+   * @param javaFileConsumer receives each Java file
+   * @return a problem that prevented finding all the files, or null if there was no such problem
+   */
+  @SuppressWarnings({
+    "lock:unneeded.suppression", // TEMPORARY, until a CF release is made
+    "lock:methodref.receiver", // Comparator.comparing
+    "lock:type.arguments.not.inferred" // Comparator.comparing
+  })
+  private @Nullable Problem discoverJavaFiles(
+      String[] args, List<Path> priorityFiles, Consumer<Path> javaFileConsumer) {
+    if (args.length == 0 && files_from == null) {
+      args = new String[] {workingDirAbsolute.toString()};
+    }
+    excludeGlobs = GlobPatterns.compile(exclude_glob);
+    if (since != null) {
+      try {
+        changedFiles = GitChangedFiles.since(workingDirAbsolute, since);
+      } catch (IOException e) {
+        return new Problem(
+            Problem.Kind.UNREADABLE,
+            null,
+            "Problem while finding the files changed since " + since + ": " + e.getMessage());
+      }
+    }
+    if (changed_lines != null) {
+      Problem changedLinesProblem = readChangedLines();
+      if (changedLinesProblem != null) {
+        return changedLinesProblem;
+      }
+      Consumer<Path> changedFilesConsumer = javaFileConsumer;
+      javaFileConsumer =
+          javaFile -> {
+            if (changedLines.get(resolve(javaFile)) != null) {
+              if (require_package_info) {
+                @SuppressWarnings("nullness:assignment") // the file is not "/"
+                @NonNull Path dir = javaFile.getParent();
+                changedDirectories.add(dir);
+              }
+              changedFilesConsumer.accept(javaFile);
+            }
+          };
+    }
+
+    // The key of each file or directory is a prefix of the pathname of every file it contains.
+    List<Path> roots = new ArrayList<>();
+    List<String> rootKeys = new ArrayList<>();
+    for (String arg : args) {
+      if (shouldExclude(arg)) {
+        continue;
+      }
+      Path p = Paths.get(arg);
+      File f = resolve(p).toFile();
+      if (!f.exists()) {
+        return new Problem(Problem.Kind.FILE_NOT_FOUND, p, "File not found: " + p.toFile());
+      }
+      if (shouldIgnoreRoot(p, f)) {
+        continue;
+      }
+      roots.add(p);
+      rootKeys.add(f.isDirectory() ? p + File.separator : p.toString());
+    }
+    Integer[] order = new Integer[roots.size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, Comparator.comparing(rootKeys::get));
+    boolean rootsOverlap = false;
+    for (int i = 1; i < order.length; i++) {
+      if (rootKeys.get(order[i]).startsWith(rootKeys.get(order[i - 1]))) {
+        rootsOverlap = true;
+      }
+    }
+
+    if (!priorityFiles.isEmpty()) {
+      Set<Path> passedOn = new HashSet<>();
+      for (Path priorityFile : priorityFiles) {
+        if (isChanged(priorityFile)
+            && wouldDiscover(priorityFile, roots)
+            && passedOn.add(priorityFile)) {
+          javaFileConsumer.accept(priorityFile);
+        }
+      }
+      Consumer<Path> allFilesConsumer = javaFileConsumer;
+      javaFileConsumer =
+          javaFile -> {
+            if (!passedOn.contains(javaFile)) {
+              allFilesConsumer.accept(javaFile);
+            }
+          };
+    }
+
+    if (require_package_info) {
+      javaFileConsumer =
+          javaFileConsumer.andThen(
+              javaFile -> {
+                @SuppressWarnings("nullness:assignment") // the file is not "/"
+                @NonNull Path dir = javaFile.getParent();
+                if (javaFile.endsWith(PACKAGE_INFO)) {
+                  hasPackageInfo.put(dir, true);
+                } else {
+                  hasPackageInfo.putIfAbsent(dir, false);
+                }
+              });
+    }
+
+    // The files to be sorted.
+    PathTrie javaFiles = new PathTrie();
+    Consumer<Path> consumer = (rootsOverlap ? javaFiles::add : javaFileConsumer);
+
+    // Verbose output about excluded directories would be printed by many threads.
+    int numThreads = numThreads();
+    ForkJoinPool pool = (numThreads > 1 && !verbose ? new ForkJoinPool(numThreads) : null);
+    try {
+      JavaFilesVisitor walker = new JavaFilesVisitor(consumer, pool);
+      for (int i : order) {
+        Problem rootProblem = discoverRoot(roots.get(i), walker);
+        if (rootProblem != null) {
+          return rootProblem;
+        }
+      }
+      if (rootsOverlap) {
+        javaFiles.forEach(javaFileConsumer);
+      }
+      if (files_from != null) {
+        Problem listProblem = discoverListedFiles(new JavaFilesVisitor(javaFileConsumer, pool));
+        if (listProblem != null) {
+          return listProblem;
+        }
+      }
+    } finally {
+      if (pool != null) {
+        pool.shutdownNow();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns true if a directory or file listed on the command line should be skipped, based on the
+   * {@code --exclude-glob} command-line argument. A directory is the base of the globs; a file is
+   * matched by its name.
+   *
+   * @param root a directory or file listed on the command line
+   * @param file the file that {@code root} names
+   * @return true if the directory or file should be skipped
+   */
+  private boolean shouldIgnoreRoot(Path root, File file) {
+    Path name = root.getFileName();
+    return !file.isDirectory() && name != null && shouldIgnore(Paths.get(""), name, false, null);
+  }
+
+  /**
+   * Passes the given file, or the Java files in the given directory, to the walker's consumer.
+   *
+   * @param root a directory or file listed on the command line
+   * @param walker walks the directory
+   * @return a problem that prevented finding all the files, or null if there was no such problem
+   */
+  private @Nullable Problem discoverRoot(Path root, JavaFilesVisitor walker) {
+    if (changedFiles != null) {
+      return discoverChangedFiles(root, changedFiles, walker.javaFileConsumer);
+    }
+    if (!Files.isDirectory(resolve(root))) {
+      walker.javaFileConsumer.accept(root);
+      return null;
+    }
+    try {
+      walker.walk(root);
+    } catch (IOException e) {
+      return new Problem(
+          Problem.Kind.UNREADABLE, root, "Problem while reading " + root + ": " + e.getMessage());
+    }
+    return walker.problem;
+  }
+
+  /**
+   * Passes the changed files that walking the given directory would find, or the given file if it
+   * has changed, to the consumer, in the order of their pathnames as strings. The directory is not
+   * walked.
+   *
+   * <p>With {@code --require-package-info}, also records whether each directory that contains a
+   * changed Java file, or that lost its package-info.java file, has a package-info.java file. Those
+   * are the directories whose answer might have changed.
+   *
+   * @param root a directory or file listed on the command line
+   * @param changedFiles the files that have changed, as real, absolute pathnames
+   * @param javaFileConsumer receives each changed Java file
+   * @return a problem that prevented finding all the files, or null if there was no such problem
+   */
+  @SuppressWarnings({
+    "lock:unneeded.suppression", // TEMPORARY, until a CF release is made
+    "lock:methodref.receiver", // Comparator.comparing
+    "lock:type.arguments.not.inferred" // Comparator.comparing
+  })
+  private @Nullable Problem discoverChangedFiles(
+      Path root, Set<Path> changedFiles, Consumer<Path> javaFileConsumer) {
+    Path realRoot;
+    try {
+      realRoot = resolve(root).toRealPath();
+    } catch (IOException e) {
+      return new Problem(
+          Problem.Kind.UNREADABLE, root, "Problem while reading " + root + ": " + e.getMessage());
+    }
+    List<Path> singletonRoot = Collections.singletonList(root);
+    List<Path> javaFiles = new ArrayList<>();
+    List<Path> lostPackageInfo = new ArrayList<>();
+    for (Path changed : changedFiles) {
+      if (!changed.startsWith(realRoot)) {
+        continue;
+      }
+      Path javaFile =
+          (changed.equals(realRoot) ? root : root.resolve(realRoot.relativize(changed)));
+      if (wouldDiscover(javaFile, singletonRoot)) {
+        javaFiles.add(javaFile);
+      } else if (javaFile.endsWith(PACKAGE_INFO) && !Files.exists(resolve(javaFile))) {
+        lostPackageInfo.add(javaFile);
+      }
+    }
+    javaFiles.sort(Comparator.comparing(Object::toString));
+
+    if (require_package_info) {
+      Set<Path> dirs = new HashSet<>();
+      for (Path javaFile : javaFiles) {
+        Path dir = javaFile.getParent();
+        if (dir != null) {
+          dirs.add(dir);
+        }
+      }
+      for (Path packageInfo : lostPackageInfo) {
+        Path dir = packageInfo.getParent();
+        if (dir != null && containsJavaFile(dir, singletonRoot)) {
+          dirs.add(dir);
+        }
+      }
+      // The order in which a walk would first find a file in each directory.
+      List<Path> sortedDirs = new ArrayList<>(dirs);
+      sortedDirs.sort(Comparator.comparing(dir -> dir + File.separator));
+      for (Path dir : sortedDirs) {
+        hasPackageInfo.putIfAbsent(dir, wouldDiscover(dir.resolve(PACKAGE_INFO), singletonRoot));
+      }
+    }
+
+    javaFiles.forEach(javaFileConsumer);
+    return null;
+  }
+
+  /**
+   * Returns true if walking the roots would find a Java file directly in the given directory.
+   *
+   * @param dir a directory
+   * @param roots the files and directories that were listed on the command line and that are not
+   *     excluded
+   * @return true if walking the roots would find a Java file in {@code dir}
+   */
+  private boolean containsJavaFile(Path dir, List<Path> roots) {
+    try (DirectoryStream<Path> entries = Files.newDirectoryStream(resolve(dir), "*.java")) {
+      for (Path entry : entries) {
+        if (wouldDiscover(dir.resolve(entry.getFileName().toString()), roots)) {
+          return true;
+        }
+      }
+    } catch (IOException | DirectoryIteratorException e) {
+      // Treat an unreadable directory as containing no Java file.
+    }
+    return false;
+  }
+
+  /**
+   * Returns true if the given file has changed since {@link #since}, or if {@code --since} was not
+   * given.
+   *
+   * @param javaFile a Java file
+   * @return true if the file should be checked
+   */
+  private boolean isChanged(Path javaFile) {
+    if (changedFiles == null) {
+      return true;
+    }
+    try {
+      return changedFiles.contains(resolve(javaFile).toRealPath());
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Reads {@link #changed_lines} into {@link #changedLines}.
+   *
+   * @return a problem that prevented reading the changed lines, or null if there was no such
+   *     problem
+   */
+  @SuppressWarnings("nullness:dereference.of.nullable") // changed_lines is non-null
+  private @Nullable Problem readChangedLines() {
+    boolean isStdin = changed_lines.equals("-");
+    Path linesFile = Paths.get(changed_lines);
+    InputStream in;
+    try {
+      if (!isStdin) {
+        in = Files.newInputStream(resolve(linesFile));
+      } else if (stdin != null && !"-".equals(files_from)) {
+        in = stdin;
+      } else {
+        return new Problem(
+            Problem.Kind.UNREADABLE, null, "Standard input is not available for --changed-lines");
+      }
+    } catch (IOException e) {
+      return new Problem(
+          Problem.Kind.FILE_NOT_FOUND,
+          linesFile,
+          "Problem while reading " + linesFile + ": " + e.getMessage());
+    }
+
+    Reader reader = new InputStreamReader(in, Charset.defaultCharset());
+    try {
+      changedLines = ChangedLines.read(reader, workingDirAbsolute);
+      return null;
+    } catch (IOException | RuntimeException e) {
+      // A RuntimeException, such as NumberFormatException, indicates malformed input.
+      String linesName = (isStdin ? "standard input" : linesFile.toString());
+      return new Problem(
+          Problem.Kind.UNREADABLE,
+          isStdin ? null : linesFile,
+          "Problem while reading " + linesName + ": " + e.getMessage());
+    } finally {
+      // Standard input is left open.
+      if (!isStdin) {
+        try {
+          reader.close();
+        } catch (IOException e) {
+          // The changed lines have been read, or a problem has already been returned.
+        }
+      }
+    }
+  }
+
+  /**
+   * Finds the Java files in the directories and files listed in {@link #files_from}, and passes
+   * them to the walker's consumer as the list is read, in the order in which they are listed. Each
+   * entry is treated as a command-line argument is.
+   *
+   * @param walker walks each listed directory
+   * @return a problem that prevented finding all the files, or null if there was no such problem
+   */
+  @SuppressWarnings("nullness:dereference.of.nullable") // files_from is non-null
+  private @Nullable Problem discoverListedFiles(JavaFilesVisitor walker) {
+    boolean isStdin = files_from.equals("-");
+    Path listFile = Paths.get(files_from);
+    InputStream in;
+    try {
+      if (!isStdin) {
+        in = Files.newInputStream(resolve(listFile));
+      } else if (stdin != null) {
+        in = stdin;
+      } else {
+        return new Problem(
+            Problem.Kind.UNREADABLE, null, "Standard input is not available for --files-from");
+      }
+    } catch (IOException e) {
+      return new Problem(
+          Problem.Kind.FILE_NOT_FOUND,
+          listFile,
+          "Problem while reading " + listFile + ": " + e.getMessage());
+    }
+
+    char terminator = (zero_terminated ? '\0' : '\n');
+    StringBuilder entry = new StringBuilder();
+    Reader reader = new BufferedReader(new InputStreamReader(in, Charset.defaultCharset()));
+    try {
+      while (true) {
+        int c = reader.read();
+        if (c != -1 && c != terminator) {
+          entry.append((char) c);
+          continue;
+        }
+        if (!zero_terminated && entry.length() > 0 && entry.charAt(entry.length() - 1) == '\r') {
+          entry.setLength(entry.length() - 1);
+        }
+        if (entry.length() > 0) {
+          String arg = entry.toString();
+          entry.setLength(0);
+          if (!shouldExclude(arg)) {
+            Path p = Paths.get(arg);
+            File f = resolve(p).toFile();
+            if (!f.exists()) {
+              return new Problem(Problem.Kind.FILE_NOT_FOUND, p, "File not found: " + p.toFile());
+            }
+            if (!shouldIgnoreRoot(p, f)) {
+              Problem problem = discoverRoot(p, walker);
+              if (problem != null) {
+                return problem;
+              }
+            }
+          }
+        }
+        if (c == -1) {
+          return null;
+        }
+      }
+    } catch (IOException e) {
+      String listName = (isStdin ? "standard input" : listFile.toString());
+      return new Problem(
+          Problem.Kind.UNREADABLE,
+          isStdin ? null : listFile,
+          "Problem while reading " + listName + ": " + e.getMessage());
+    } finally {
+      // Standard input is left open.
+      if (!isStdin) {
+        try {
+          reader.close();
+        } catch (IOException e) {
+          // The whole list has been read, or a problem has already been returned.
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the .gitignore files that apply under a directory listed on the command line, or null
+   * if {@code --use-gitignore} was not given.
+   *
+   * @param resolvedRoot a directory listed on the command line, resolved against the working
+   *     directory
+   * @return the .gitignore files that apply under the directory, or null
+   */
+  private @Nullable GitIgnore gitIgnore(Path resolvedRoot) {
+    return (use_gitignore ? gitIgnores.computeIfAbsent(resolvedRoot, GitIgnore::new) : null);
+  }
+
+  /**
+   * Returns true if {@link #discoverJavaFiles} would find the given file.
+   *
+   * @param javaFile a Java file
+   * @param roots the files and directories that were listed on the command line and that are not
+   *     excluded
+   * @return true if walking the roots would find {@code javaFile}
+   */
+  private boolean wouldDiscover(Path javaFile, List<Path> roots) {
+    for (Path root : roots) {
+      if (root.equals(javaFile)) {
+        return Files.exists(resolve(javaFile));
+      }
+      if (!javaFile.startsWith(root)
+          || !javaFile.toString().endsWith(".java")
+          || !Files.isRegularFile(resolve(javaFile), LinkOption.NOFOLLOW_LINKS)) {
+        continue;
+      }
+      // The walk does not follow symbolic links, and it skips excluded directories.
+      Path resolvedRoot = resolve(root);
+      GitIgnore gitIgnore = gitIgnore(resolvedRoot);
+      boolean found =
+          !shouldExclude(javaFile)
+              && !shouldIgnore(resolvedRoot, resolve(javaFile), false, gitIgnore);
+      for (Path dir = javaFile.getParent(); found && dir != null; dir = dir.getParent()) {
+        found = Files.isDirectory(resolve(dir), LinkOption.NOFOLLOW_LINKS) && !shouldExclude(dir);
+        if (dir.equals(root)) {
+          break;
+        }
+        found = found && !shouldIgnore(resolvedRoot, resolve(dir), true, gitIgnore);
+      }
+      if (found) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Passes the Java files that it visits to a consumer. */
+  private class JavaFilesVisitor extends SimpleFileVisitor<Path> {
+
+    /** Receives each Java file. */
+    private final Consumer<Path> javaFileConsumer;
+
+    /** A problem that terminated the walk, or null if there was none. */
+    @Nullable Problem problem = null;
+
+    /** The directory being walked, as listed on the command line. */
+    private Path root = Paths.get("");
+
+    /** The directory being walked, as passed to {@link SortedFileWalker#walk}. */
+    private Path resolvedRoot = Paths.get("");
+
+    /** The .gitignore files that apply to the directory being walked, or null to not use them. */
+    private @Nullable GitIgnore gitIgnore = null;
+
+    /** Walks each directory, reading its subdirectories ahead in parallel if there is a pool. */
+    private final SortedFileWalker walker;
+
+    /**
+     * Create a new JavaFilesVisitor.
+     *
+     * @param javaFileConsumer receives each Java file
+     * @param pool the pool that reads directories ahead of the visitor, or null
+     */
+    public JavaFilesVisitor(Consumer<Path> javaFileConsumer, @Nullable ForkJoinPool pool) {
+      this.javaFileConsumer = javaFileConsumer;
+      this.walker = new SortedFileWalker(pool, dir -> shouldSkip(dir, true));
+    }
+
+    /**
+     * Walks the given directory.
+     *
+     * @param root a directory listed on the command line
+     * @throws IOException if an I/O error is thrown by a visitor method
+     */
+    void walk(Path root) throws IOException {
+      this.root = root;
+      this.resolvedRoot = resolve(root);
+      this.gitIgnore = gitIgnore(resolvedRoot);
+      walker.walk(resolvedRoot, this);
+    }
+
+    /**
+     * Returns true if the given file or directory should be skipped, based on the {@code
+     * --exclude}, {@code --exclude-glob}, and {@code --use-gitignore} command-line arguments. It
+     * may be called on any thread.
+     *
+     * @param file a file or directory found by the walk
+     * @param isDirectory true if {@code file} is a directory
+     * @return true if the file or directory should be skipped
+     */
+    private boolean shouldSkip(Path file, boolean isDirectory) {
+      return shouldExclude(unresolve(file))
+          || (!file.equals(resolvedRoot)
+              && shouldIgnore(resolvedRoot, file, isDirectory, gitIgnore));
+    }
+
+    /**
+     * Returns the pathname of a file under the root as it would be if the root had not been
+     * resolved.
+     *
+     * @param file a file found by the walk
+     * @return the pathname of the file relative to the root as listed on the command line
+     */
+    private Path unresolve(Path file) {
+      return (resolvedRoot == root ? file : root.resolve(resolvedRoot.relativize(file)));
+    }
+
+    @Override
+    public FileVisitResult visitFile(Path file, BasicFileAttributes attr) {
+      if (attr.isRegularFile() && file.toString().endsWith(".java")) {
+        if (!shouldSkip(file, false)) {
+          javaFileConsumer.accept(unresolve(file));
+        }
+      }
+      return FileVisitResult.CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attr) {
+      if (shouldSkip(dir, true)) {
+        return FileVisitResult.SKIP_SUBTREE;
+      }
+      return FileVisitResult.CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult postVisitDirectory(Path dir, @Nullable IOException exc) {
+      if (exc != null) {
+        problem = visitProblem(unresolve(dir), exc);
+        return FileVisitResult.TERMINATE;
+      }
+      return FileVisitResult.CONTINUE;
+    }
+
+    /**
+     * Returns a problem that terminates the walk.
+     *
+     * @param file the file or directory that could not be visited
+     * @param exc the exception that prevented visiting it
+     * @return a problem that terminates the walk
+     */
+    private Problem visitProblem(Path file, IOException exc) {
+      return new Problem(
+          Problem.Kind.UNREADABLE, file, "Problem visiting " + file + ": " + exc.getMessage());
+    }
+
+    @Override
+    public FileVisitResult visitFileFailed(Path file, IOException exc) {
+      if (exc != null) {
+        problem = visitProblem(unresolve(file), exc);
+        return FileVisitResult.TERMINATE;
+      }
+      return FileVisitResult.CONTINUE;
+    }
+  }
+
+  /**
+   * Return true if the given Java element should not be checked, based on the {@code
+   * --dont-require} command-line argument.
+   *
+   * @param name the name of a Java element. It is a simple name, except for packages.
+   * @return true if no warnings should be issued about the element
+   */
+  boolean shouldNotRequire(String name) {
+    if (dont_require == null) {
+      return false;
+    }
+    boolean result = dont_require.matcher(name).find();
+    if (verbose) {
+      stdout.printf("shouldNotRequire(%s) => %s%n", name, result);
+    }
+    return result;
+  }
+
+  /**
+   * Return true if the given file or directory should be skipped, based on the {@code --exclude}
+   * command-line argument.
+   *
+   * @param fileName the name of a Java file or directory
+   * @return true if the file or directory should be skipped
+   */
+  private boolean shouldExclude(String fileName) {
+    if (exclude == null) {
+      return false;
+    }
+    boolean result = exclude.matcher(fileName).find();
+    if (verbose) {
+      stdout.printf("shouldExclude(%s) => %s%n", fileName, result);
+    }
+    return result;
+  }
+
+  /**
+   * Return true if the given file or directory should be skipped, based on the {@code --exclude}
+   * command-line argument.
+   *
+   * @param path a Java file or directory
+   * @return true if the file or directory should be skipped
+   */
+  private boolean shouldExclude(Path path) {
+    return shouldExclude(path.toString());
+  }
+
+  /**
+   * Return true if the given file or directory should be skipped, based on the {@code
+   * --exclude-glob} and {@code --use-gitignore} command-line arguments.
+   *
+   * @param base the directory to which the globs are relative
+   * @param file a Java file or directory below {@code base}
+   * @param isDirectory true if {@code file} is a directory
+   * @param gitIgnore the .gitignore files that apply to {@code file}, or null to not use them
+   * @return true if the file or directory should be skipped
+   */
+  private boolean shouldIgnore(
+      Path base, Path file, boolean isDirectory, @Nullable GitIgnore gitIgnore) {
+    if (excludeGlobs == null && gitIgnore == null) {
+      return false;
+    }
+    boolean result =
+        (excludeGlobs != null
+                && Boolean.TRUE.equals(
+                    excludeGlobs.match(GitIgnore.relativePath(base, file), isDirectory)))
+            || (gitIgnore != null && gitIgnore.isIgnored(file, isDirectory));
+    if (verbose) {
+      stdout.printf("shouldIgnore(%s) => %s%n", file, result);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the number of threads that check files, as determined by {@link #jobs}.
+   *
+   * @return the number of threads that check files
+   */
+  private int numThreads() {
+    return (jobs < 1 ? Runtime.getRuntime().availableProcessors() : jobs);
+  }
+
+  /**
+   * Check the Java files named by the command-line arguments, reporting the problems to {@link
+   * #out}. The problems are reported in the order of the files' pathnames, regardless of the value
+   * of {@link #jobs}.
+   *
+   * @param args the directories and files listed on the command line
+   * @return the exit status: 0 if there were no errors, 1 if there were errors, 2 if a problem
+   *     prevented checking the files
+   */
+  private int checkJavaFiles(String[] args) {
+    int numThreads = numThreads();
+    List<Path> history = (error_history == null ? Collections.emptyList() : readErrorHistory());
+    List<Path> priorityFiles = (errorLimit() > 0 ? history : Collections.emptyList());
+    String fingerprint = optionsFingerprint();
+    ResultCache cache = null;
+    if (cache_file != null) {
+      // The working directory affects the file names in errors.
+      String cacheFingerprint =
+          ResultCache.hash(
+              (fingerprint + "\n" + workingDirAbsolute).getBytes(StandardCharsets.UTF_8));
+      cache = ResultCache.load(resolve(Paths.get(cache_file)), cacheFingerprint, stderr);
+    }
+    SharedCache sharedCache =
+        (cache_dir == null
+            ? null
+            : new SharedCache(
+                resolve(Paths.get(cache_dir)), fingerprint, cache_dir_max_bytes, stderr));
+    CheckPipeline pipeline = new CheckPipeline(numThreads, priorityFiles, cache, sharedCache);
+    ResultCache.TreeDigest treeDigest = null;
+    if (cache != null && priorityFiles.isEmpty() && changed_lines == null) {
+      // Find all the files first.  If none of them has changed, report the recorded errors without
+      // looking at the files individually.  With --changed-lines, the errors to report are not the
+      // recorded ones, so this is skipped.
+      List<Path> javaFiles = new ArrayList<>();
+      Problem discoveryProblem;
+      try {
+        discoveryProblem = discoverJavaFiles(args, priorityFiles, javaFiles::add);
+      } catch (RuntimeException e) {
+        discoveryProblem = findingProblem(e);
+      }
+      if (discoveryProblem == null) {
+        try {
+          treeDigest = ResultCache.TreeDigest.of(javaFiles, this::resolve);
+        } catch (IOException e) {
+          // Let the pipeline report the problem with the file.
+        }
+      }
+      if (treeDigest != null) {
+        List<Diagnostic> treeErrors = cache.lookupTree(treeDigest);
+        if (treeErrors != null) {
+          if (verbose) {
+            stdout.printf("No file has changed since %s was written%n", cache_file);
+          }
+          reportErrors(treeErrors);
+          return (numErrors == 0 ? 0 : 1);
+        }
+        if (reportedErrors == null && errorLimit() == 0) {
+          // Collect the errors, so that they can be recorded for the whole tree.
+          reportedErrors = new ArrayList<>();
+        }
+      }
+      pipeline.run(javaFiles, discoveryProblem);
+    } else {
+      pipeline.run(args);
+    }
+    if (problem != null) {
+      return 2;
+    }
+    if (cache != null
+        && treeDigest != null
+        && reportedErrors != null
+        && errorLimit() == 0
+        && pipeline.complete) {
+      cache.recordTree(treeDigest, reportedErrors);
+    }
+    if (error_history != null) {
+      writeErrorHistory(history, pipeline.checkedFiles, pipeline.filesWithErrors);
+    }
+    if (cache != null) {
+      try {
+        cache.save(this::resolve);
+      } catch (IOException e) {
+        stderr.println("Problem while writing " + cache_file + ": " + e.getMessage());
+      }
+    }
+    if (sharedCache != null) {
+      try {
+        sharedCache.evict();
+      } catch (IOException e) {
+        stderr.println("Problem while evicting from " + cache_dir + ": " + e.getMessage());
+      }
+    }
+    return (numErrors == 0 ? 0 : 1);
+  }
+
+  /**
+   * Returns a problem for an unexpected exception while finding the Java files.
+   *
+   * @param e the exception
+   * @return a problem for the exception
+   */
+  private static Problem findingProblem(RuntimeException e) {
+    return new Problem(Problem.Kind.UNREADABLE, null, "Problem while finding Java files: " + e);
+  }
+
+  /**
+   * Returns a hash of the values of the options that affect the errors in a file.
+   *
+   * @return a hash of the values of the options that affect the errors in a file
+   */
+  private String optionsFingerprint() {
+    StringBuilder values = new StringBuilder();
+    Field[] fields = RequireJavadoc.class.getFields();
+    Arrays.sort(fields, Comparator.comparing(Field::getName));
+    for (Field field : fields) {
+      if (field.isAnnotationPresent(Option.class) && !EXECUTION_OPTIONS.contains(field.getName())) {
+        try {
+          values.append(field.getName()).append('=').append(field.get(this)).append('\n');
+        } catch (IllegalAccessException e) {
+          throw new Error("@Option field is not public: " + field, e);
+        }
+      }
+    }
+    return ResultCache.hash(values.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Returns the maximum number of errors to report, or 0 if there is no limit.
+   *
+   * @return the maximum number of errors to report, or 0 if there is no limit
+   */
+  private int errorLimit() {
+    return first_error ? 1 : Math.max(max_errors, 0);
+  }
+
+  /**
+   * Returns true if no more errors should be reported.
+   *
+   * @return true if the number of reported errors has reached the limit
+   */
+  private boolean errorLimitReached() {
+    int limit = errorLimit();
+    return limit > 0 && numErrors >= limit;
+  }
+
+  /**
+   * Reads the {@link #error_history} file.
+   *
+   * @return the files that had errors in previous runs, most recent first
+   */
+  private List<Path> readErrorHistory() {
+    @SuppressWarnings("nullness:assignment") // only called when error_history is set
+    @NonNull String historyFile = error_history;
+    Path historyPath = resolve(Paths.get(historyFile));
+    if (!Files.exists(historyPath)) {
+      return Collections.emptyList();
+    }
+    List<Path> result = new ArrayList<>();
+    try {
+      for (String line : Files.readAllLines(historyPath, StandardCharsets.UTF_8)) {
+        if (!line.isEmpty()) {
+          result.add(Paths.get(line));
+        }
+      }
+    } catch (IOException | InvalidPathException e) {
+      stderr.println("Ignoring " + historyFile + ": " + e.getMessage());
+      return Collections.emptyList();
+    }
+    return result;
+  }
+
+  /**
+   * Writes the {@link #error_history} file. It lists the files that had errors in this run,
+   * followed by the files that had errors in earlier runs and that were not checked in this run.
+   *
+   * @param history the files that had errors in earlier runs
+   * @param checkedFiles the files that were checked in this run
+   * @param filesWithErrors the files that had errors in this run
+   */
+  private void writeErrorHistory(
+      List<Path> history, Set<Path> checkedFiles, Set<Path> filesWithErrors) {
+    @SuppressWarnings("nullness:assignment") // only called when error_history is set
+    @NonNull String historyFile = error_history;
+    Set<String> lines = new LinkedHashSet<>();
+    for (Path file : filesWithErrors) {
+      lines.add(file.toString());
+    }
+    for (Path file : history) {
+      if (!checkedFiles.contains(file)) {
+        lines.add(file.toString());
+      }
+    }
+    Path historyPath = resolve(Paths.get(historyFile)).toAbsolutePath();
+    @SuppressWarnings("nullness:assignment") // historyPath is absolute and is not a root
+    @NonNull Path parent = historyPath.getParent();
+    try {
+      Files.createDirectories(parent);
+      Path tmp = Files.createTempFile(parent, "error-history", ".tmp");
+      Files.write(tmp, lines, StandardCharsets.UTF_8);
+      Files.move(tmp, historyPath, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      stderr.println("Problem while writing " + historyFile + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * The maximum number of discovered files whose problems have not yet been reported. This bounds
+   * the memory used by the pipeline, independently of the total number of problems.
+   */
+  private static final int MAX_FILES_IN_FLIGHT = 1024;
+
+  /** The maximum number of discovered files that are waiting to be read. */
+  private static final int MAX_FILES_TO_READ = 256;
+
+  /** A Java file that is being checked. */
+  private static class SourceFile {
+
+    /** Marks the end of the files. */
+    static final SourceFile END = new SourceFile(Paths.get(""));
+
+    /** The file. */
+    final Path path;
+
+    /** The contents of the file, or null if they have not been read. */
+    char @Nullable [] contents = null;
+
+    /** The size of the file; set only if there is a {@link ResultCache}. */
+    long size;
+
+    /** The modification time of the file; set only if there is a {@link ResultCache}. */
+    long modified;
+
+    /**
+     * The hash of the file's contents; set only if there is a {@link ResultCache} or {@link
+     * SharedCache}.
+     */
+    @Nullable String hash = null;
+
+    /** The problems in the file. Completes exceptionally if the file cannot be read or parsed. */
+    final CompletableFuture<List<Diagnostic>> errors = new CompletableFuture<>();
+
+    /**
+     * Creates a new SourceFile.
+     *
+     * @param path the file
+     */
+    SourceFile(Path path) {
+      this.path = path;
+    }
+
+    /**
+     * Returns true if this marks the end of the files.
+     *
+     * @return true if this is {@link #END}
+     */
+    @SuppressWarnings("interning:not.interned") // comparison against a sentinel
+    boolean isEnd() {
+      return this == END;
+    }
+  }
+
+  /**
+   * Checks Java files in concurrent stages that are connected by bounded queues:
+   *
+   * <ol>
+   *   <li>discovery: one thread finds the Java files, in sorted order;
+   *   <li>reading: one thread reads the contents of each file;
+   *   <li>checking: several threads parse and check the files; and
+   *   <li>output: the calling thread reports each file's problems, in sorted order.
+   * </ol>
+   *
+   * <p>Reading and checking start as soon as the first file is found, so I/O overlaps computation.
+   * A file's problems are reported as soon as it and all the files before it have been checked.
+   */
+  private class CheckPipeline {
+
+    /** The number of threads that parse and check files. */
+    private final int numThreads;
+
+    /** The discovered files, in order. The output stage takes files from this queue. */
+    private final BlockingQueue<SourceFile> discovered =
+        new ArrayBlockingQueue<>(MAX_FILES_IN_FLIGHT);
+
+    /** The files whose contents need to be read. */
+    private final BlockingQueue<SourceFile> toRead = new ArrayBlockingQueue<>(MAX_FILES_TO_READ);
+
+    /** The files whose contents have been read and that need to be checked. */
+    private final BlockingQueue<SourceFile> toCheck;
+
+    /** Reads the contents of files; used only by the reading stage. */
+    private final SourceReader sourceReader = new SourceReader();
+
+    /** A problem that stopped discovery, or null if there was none. */
+    private volatile @Nullable Problem discoveryProblem = null;
+
+    /** Files to check before any others; see {@link #discoverJavaFiles}. */
+    private final List<Path> priorityFiles;
+
+    /** The errors recorded by previous runs, or null if there is no cache. */
+    private final @Nullable ResultCache cache;
+
+    /** The errors recorded by any process for given file contents, or null. */
+    private final @Nullable SharedCache sharedCache;
 
-  /** All the errors this program will report. */
-  private List<String> errors = new ArrayList<>();
+    /** True if the problems in every file have been reported. */
+    boolean complete = false;
 
-  /** The Java files to be checked. */
-  private List<Path> javaFiles = new ArrayList<Path>();
+    /**
+     * True if the remaining work is not needed, because some file could not be checked or because
+     * the error limit has been reached. The stages then skip their remaining work.
+     */
+    private volatile boolean cancelled = false;
 
-  /** The current working directory, for making relative pathnames. */
-  private Path workingDirRelative = Paths.get("");
+    /** The files whose problems were reported. */
+    final Set<Path> checkedFiles = new HashSet<>();
 
-  /** The current working directory, for making relative pathnames. */
-  private Path workingDirAbsolute = Paths.get("").toAbsolutePath();
+    /** The files that had errors, in the order they were reported. */
+    final Set<Path> filesWithErrors = new LinkedHashSet<>();
 
-  /**
-   * The main entry point for the require-javadoc program. See documentation at <a
-   * href="https://github.com/plume-lib/require-javadoc">https://github.com/plume-lib/require-javadoc</a>.
-   *
-   * @param args the command-line arguments; see the README.md file
-   */
-  public static void main(String[] args) {
-    RequireJavadoc rj = new RequireJavadoc();
-    Options options =
-        new Options(
-            "java org.plumelib.javadoc.RequireJavadoc [options] [directory-or-file ...]", rj);
-    String[] remainingArgs = options.parse(true, args);
+    /**
+     * Creates a new CheckPipeline.
+     *
+     * @param numThreads the number of threads that parse and check files
+     * @param priorityFiles files to check before any others, if they would be checked at all
+     * @param cache the errors recorded by previous runs, or null
+     * @param sharedCache the errors recorded by any process for given file contents, or null
+     */
+    CheckPipeline(
+        int numThreads,
+        List<Path> priorityFiles,
+        @Nullable ResultCache cache,
+        @Nullable SharedCache sharedCache) {
+      this.numThreads = numThreads;
+      this.toCheck = new ArrayBlockingQueue<>(2 * numThreads);
+      this.priorityFiles = priorityFiles;
+      this.cache = cache;
+      this.sharedCache = sharedCache;
+    }
+
+    /**
+     * Check the Java files named by the command-line arguments, reporting the problems to {@link
+     * #out}. Sets {@link #problem} if a file cannot be found, read, or parsed.
+     *
+     * @param args the directories and files listed on the command line
+     */
+    void run(String[] args) {
+      run(() -> discover(args));
+    }
 
-    rj.setJavaFiles(remainingArgs);
+    /**
+     * Checks the given files, which have already been found, and reports the problems.
+     *
+     * @param javaFiles the Java files, as found by {@link #discoverJavaFiles}
+     * @param problem the problem encountered while finding them, or null
+     */
+    void run(List<Path> javaFiles, @Nullable Problem problem) {
+      run(() -> replay(javaFiles, problem));
+    }
 
-    for (Path javaFile : rj.javaFiles) {
-      if (rj.verbose) {
-        System.out.println("Checking " + javaFile);
+    /**
+     * Runs the pipeline.
+     *
+     * @param discoveryStage the discovery stage
+     */
+    private void run(Runnable discoveryStage) {
+      ExecutorService executor =
+          (workers != null ? workers : Executors.newFixedThreadPool(numThreads + 2));
+      List<Future<?>> stages = new ArrayList<>(numThreads + 2);
+      try {
+        stages.add(executor.submit(discoveryStage));
+        stages.add(executor.submit(this::read));
+        for (int i = 0; i < numThreads; i++) {
+          stages.add(executor.submit(this::check));
+        }
+        report();
+      } finally {
+        // Interrupt the stages that are still running, as when the error limit was reached.  The
+        // shared threads, and their parsers, are kept for the next run.
+        for (Future<?> stage : stages) {
+          stage.cancel(true);
+        }
+        if (executor != workers) {
+          executor.shutdown();
+        }
       }
+    }
+
+    /**
+     * The discovery stage: finds the Java files and enqueues them for the other stages.
+     *
+     * @param args the directories and files listed on the command line
+     */
+    private void discover(String[] args) {
       try {
-        ParserConfiguration parserConfiguration = new ParserConfiguration();
-        parserConfiguration.setLanguageLevel(ParserConfiguration.LanguageLevel.JAVA_17);
-        StaticJavaParser.setConfiguration(parserConfiguration);
-        CompilationUnit cu = StaticJavaParser.parse(javaFile);
-        RequireJavadocVisitor visitor = rj.new RequireJavadocVisitor(javaFile);
-        visitor.visit(cu, null);
-      } catch (IOException e) {
-        System.out.println("Problem while reading " + javaFile + ": " + e.getMessage());
-        System.exit(2);
-      } catch (ParseProblemException e) {
-        System.out.println("Problem while parsing " + javaFile + ": " + e.getMessage());
-        System.exit(2);
+        discoveryProblem = discoverJavaFiles(args, priorityFiles, this::enqueue);
+      } catch (CancellationException e) {
+        // The pipeline is shutting down.
+        return;
+      } catch (RuntimeException e) {
+        discoveryProblem = findingProblem(e);
       }
+      enqueue(SourceFile.END);
     }
-    for (String error : rj.errors) {
-      System.out.println(error);
+
+    /**
+     * A discovery stage that enqueues files that have already been found.
+     *
+     * @param javaFiles the Java files, as found by {@link #discoverJavaFiles}
+     * @param problem the problem encountered while finding them, or null
+     */
+    private void replay(List<Path> javaFiles, @Nullable Problem problem) {
+      try {
+        for (Path javaFile : javaFiles) {
+          enqueue(javaFile);
+        }
+      } catch (CancellationException e) {
+        // The pipeline is shutting down.
+        return;
+      }
+      discoveryProblem = problem;
+      enqueue(SourceFile.END);
     }
-    System.exit(rj.errors.isEmpty() ? 0 : 1);
-  }
 
-  /** Creates a new RequireJavadoc instance. */
-  private RequireJavadoc() {}
+    /**
+     * Enqueue a file for the reading and output stages.
+     *
+     * @param javaFile a Java file
+     */
+    private void enqueue(Path javaFile) {
+      enqueue(new SourceFile(javaFile));
+    }
 
-  /**
-   * Set the Java files to be processed from the command-line arguments.
-   *
-   * @param args the directories and files listed on the command line
-   */
-  @SuppressWarnings({
-    "lock:unneeded.suppression", // TEMPORARY, until a CF release is made
-    "lock:methodref.receiver", // Comparator.comparing
-    "lock:type.arguments.not.inferred" // Comparator.comparing
-  })
-  private void setJavaFiles(String[] args) {
-    if (args.length == 0) {
-      args = new String[] {workingDirAbsolute.toString()};
+    /**
+     * Enqueue a file for the reading and output stages.
+     *
+     * @param sourceFile a Java file, or {@link SourceFile#END}
+     */
+    private void enqueue(SourceFile sourceFile) {
+      try {
+        // Last, because the output stage shuts the pipeline down once it takes the end marker.
+        toRead.put(sourceFile);
+        discovered.put(sourceFile);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new CancellationException();
+      }
     }
 
-    FileVisitor<Path> walker = new JavaFilesVisitor();
+    /**
+     * The reading stage: reads the contents of each file. If the file's errors are in the cache,
+     * completes the file without passing it to the checking stage.
+     */
+    private void read() {
+      try {
+        while (true) {
+          SourceFile sourceFile = toRead.take();
+          if (sourceFile.isEnd()) {
+            for (int i = 0; i < numThreads; i++) {
+              toCheck.put(sourceFile);
+            }
+            return;
+          }
+          if (cancelled) {
+            sourceFile.errors.complete(Collections.emptyList());
+            continue;
+          }
+          try {
+            if (readFromCache(sourceFile)) {
+              continue;
+            }
+            ByteBuffer bytes = sourceReader.read(resolve(sourceFile.path));
+            if (cache != null || sharedCache != null) {
+              String hash = ResultCache.hash(bytes);
+              sourceFile.hash = hash;
+              ResultCache.Entry entry =
+                  (cache == null ? null : cache.lookup(sourceFile.path.toString(), hash));
+              if (entry != null) {
+                sourceFile.errors.complete(entry.errors);
+                continue;
+              }
+              if (sharedCache != null) {
+                List<Diagnostic> errors =
+                    sharedCache.lookup(
+                        sharedCache.key(sourceFile.path, hash),
+                        displayName(sourceFile.path).toString());
+                if (errors != null) {
+                  sourceFile.errors.complete(errors);
+                  continue;
+                }
+              }
+            }
+            sourceFile.contents = sourceReader.decode(bytes);
+          } catch (Throwable e) {
+            sourceFile.errors.completeExceptionally(e);
+            continue;
+          }
+          toCheck.put(sourceFile);
+        }
+      } catch (InterruptedException e) {
+        // The pipeline is shutting down.
+      }
+    }
 
-    for (String arg : args) {
-      if (shouldExclude(arg)) {
-        continue;
+    /**
+     * If the cache has a record of the given file with its current size and modification time,
+     * completes the file with the recorded errors. Does not read the file.
+     *
+     * @param sourceFile a file
+     * @return true if the file's errors came from the cache
+     * @throws IOException if the file's attributes cannot be read
+     */
+    private boolean readFromCache(SourceFile sourceFile) throws IOException {
+      if (cache == null) {
+        return false;
       }
-      Path p = Paths.get(arg);
-      File f = p.toFile();
-      if (!f.exists()) {
-        System.out.println("File not found: " + f);
-        System.exit(2);
+      BasicFileAttributes attrs =
+          Files.readAttributes(resolve(sourceFile.path), BasicFileAttributes.class);
+      sourceFile.size = attrs.size();
+      sourceFile.modified = attrs.lastModifiedTime().toMillis();
+      ResultCache.Entry entry =
+          cache.lookup(sourceFile.path.toString(), sourceFile.size, sourceFile.modified);
+      if (entry == null) {
+        return false;
       }
-      if (f.isDirectory()) {
-        try {
-          Files.walkFileTree(p, walker);
-        } catch (IOException e) {
-          System.out.println("Problem while reading " + f + ": " + e.getMessage());
-          System.exit(2);
+      sourceFile.hash = entry.hash;
+      sourceFile.errors.complete(entry.errors);
+      return true;
+    }
+
+    /** The checking stage: parses and checks each file. */
+    private void check() {
+      try {
+        while (true) {
+          SourceFile sourceFile = toCheck.take();
+          if (sourceFile.isEnd()) {
+            return;
+          }
+          char[] contents = sourceFile.contents;
+          sourceFile.contents = null;
+          if (cancelled || contents == null) {
+            sourceFile.errors.complete(Collections.emptyList());
+            continue;
+          }
+          try {
+            List<Diagnostic> fileErrors = checkJavaFile(sourceFile.path, contents);
+            String hash = sourceFile.hash;
+            if (sharedCache != null && hash != null) {
+              sharedCache.store(sharedCache.key(sourceFile.path, hash), fileErrors);
+            }
+            sourceFile.errors.complete(fileErrors);
+          } catch (Throwable e) {
+            sourceFile.errors.completeExceptionally(e);
+          }
         }
-      } else {
-        javaFiles.add(Paths.get(arg));
+      } catch (InterruptedException e) {
+        // The pipeline is shutting down.
       }
     }
 
-    javaFiles.sort(Comparator.comparing(Object::toString));
-
-    Set<Path> missingPackageInfoFiles = new LinkedHashSet<>();
-    if (require_package_info) {
-      for (Path javaFile : javaFiles) {
-        @SuppressWarnings("nullness:assignment") // the file is not "/", so getParent() is non-null
-        @NonNull Path javaFileParent = javaFile.getParent();
-        // Java 11 has Path.of() instead of creating a new File.
-        Path packageInfo = javaFileParent.resolve(new File("package-info.java").toPath());
-        if (!javaFiles.contains(packageInfo)) {
-          missingPackageInfoFiles.add(packageInfo);
+    /**
+     * The output stage: reports the problems in each file, in the order the files were discovered.
+     * The discovered files form a reorder buffer: the problems in a file are held only until the
+     * problems in all earlier files have been reported.
+     *
+     * <p>Returns early, without waiting for the other stages, if the error limit is reached.
+     */
+    private void report() {
+      // The error about a missing package-info.java file comes before the errors in the files of
+      // its directory.  When there is an error limit, report the errors as soon as possible
+      // instead, and the package errors last.
+      HeldErrors heldErrors = (require_package_info && errorLimit() == 0 ? new HeldErrors() : null);
+      SourceFile failure = null;
+      Throwable failureCause = null;
+      try {
+        while (!errorLimitReached()) {
+          SourceFile sourceFile = discovered.poll();
+          if (sourceFile == null) {
+            // Discovery is slow, as when --files-from is being written by another program.
+            out.flush();
+            sourceFile = discovered.take();
+          }
+          if (sourceFile.isEnd()) {
+            complete = true;
+            break;
+          }
+          if (!sourceFile.errors.isDone()) {
+            out.flush();
+          }
+          try {
+            List<Diagnostic> fileErrors = sourceFile.errors.get();
+            // Problems after a file that could not be checked are not reported.
+            if (failure == null) {
+              if (cache != null && sourceFile.hash != null) {
+                cache.record(
+                    sourceFile.path.toString(),
+                    new ResultCache.Entry(
+                        sourceFile.size, sourceFile.modified, sourceFile.hash, fileErrors));
+              }
+              if (changedLines != null) {
+                fileErrors = changedErrors(sourceFile.path, fileErrors);
+              }
+              checkedFiles.add(sourceFile.path);
+              if (!fileErrors.isEmpty()) {
+                filesWithErrors.add(sourceFile.path);
+              }
+              if (heldErrors != null) {
+                heldErrors.add(sourceFile.path, fileErrors);
+              } else {
+                reportErrors(fileErrors);
+              }
+            }
+          } catch (ExecutionException e) {
+            if (failure == null) {
+              failure = sourceFile;
+              failureCause = e.getCause();
+              cancelled = true;
+            }
+          }
         }
+      } catch (InterruptedException e) {
+        throw new Error(e);
       }
-      for (Path packageInfo : missingPackageInfoFiles) {
-        errors.add("missing package documentation: no file " + packageInfo);
-      }
-    }
-  }
 
-  /** Collects files into the {@link #javaFiles} variable. */
-  private class JavaFilesVisitor extends SimpleFileVisitor<Path> {
+      if (errorLimitReached()) {
+        cancelled = true;
+        return;
+      }
 
-    /** Create a new JavaFilesVisitor. */
-    public JavaFilesVisitor() {}
+      // As when all files were found before any was read, a problem finding the files takes
+      // precedence over a problem reading or parsing one of them.
+      if (discoveryProblem != null) {
+        out.flush();
+        stdout.println(discoveryProblem);
+        problem = discoveryProblem;
+        return;
+      }
+      if (heldErrors != null) {
+        heldErrors.finish();
+      }
+      // The directories whose files were not reported, such as those with no checked file.
+      Set<Path> resolvedDirs =
+          (heldErrors != null ? heldErrors.resolvedDirs : Collections.<Path>emptySet());
+      hasPackageInfo.forEach(
+          (dir, present) -> {
+            if (!present
+                && !resolvedDirs.contains(dir)
+                && (changedLines == null || changedDirectories.contains(dir))) {
+              reportErrors(
+                  Collections.singletonList(
+                      Diagnostic.missingPackageInfo(dir.resolve(PACKAGE_INFO).toString())));
+            }
+          });
+      if (failure != null) {
+        reportProblem(failure.path, failureCause);
+      }
+    }
 
-    @Override
-    public FileVisitResult visitFile(Path file, BasicFileAttributes attr) {
-      if (attr.isRegularFile() && file.toString().endsWith(".java")) {
-        if (!shouldExclude(file)) {
-          javaFiles.add(file);
+    /**
+     * The errors that the output stage holds until it is known whether the directory of their file
+     * contains a package-info.java file. That is known when the package-info.java file is
+     * discovered, or when discovery has left the directory: the walk finds the files in sorted
+     * order, so the files in a directory and its subdirectories are found together. The files
+     * listed by {@link #files_from} can come in any order, so with it, the errors are held until
+     * discovery is complete.
+     */
+    private class HeldErrors {
+
+      /** The files whose errors are held, in the order they were discovered. */
+      private final Deque<Path> files = new ArrayDeque<>();
+
+      /** The errors in each file in {@link #files}, in the same order. */
+      private final Deque<List<Diagnostic>> errors = new ArrayDeque<>();
+
+      /** The directories whose package-info.java file is present or has been reported missing. */
+      final Set<Path> resolvedDirs = new HashSet<>();
+
+      /** The most recently discovered file, or null if none has been. */
+      private @Nullable Path lastFile = null;
+
+      /** True if discovery is complete. */
+      private boolean discoveryComplete = false;
+
+      /**
+       * Reports the errors in the given file, and in earlier files, as soon as it is known whether
+       * their directories contain a package-info.java file.
+       *
+       * @param javaFile the file that was discovered after all others added so far
+       * @param fileErrors the errors in the file
+       */
+      void add(Path javaFile, List<Diagnostic> fileErrors) {
+        files.add(javaFile);
+        errors.add(fileErrors);
+        lastFile = javaFile;
+        flush();
+      }
+
+      /** Reports all the held errors, once discovery is complete. */
+      void finish() {
+        discoveryComplete = true;
+        flush();
+      }
+
+      /**
+       * Reports the held errors, in order, up to the first file whose directory might yet turn out
+       * to contain a package-info.java file.
+       */
+      private void flush() {
+        while (!files.isEmpty()) {
+          Path dir = files.element().getParent();
+          if (dir != null && !resolvedDirs.contains(dir)) {
+            // The discovery thread has recorded every file before the last one.
+            Boolean present = hasPackageInfo.get(dir);
+            if (!Boolean.TRUE.equals(present)) {
+              if (!hasLeft(dir)) {
+                return;
+              }
+              if (present != null) {
+                reportErrors(
+                    Collections.singletonList(
+                        Diagnostic.missingPackageInfo(dir.resolve(PACKAGE_INFO).toString())));
+              }
+            }
+            resolvedDirs.add(dir);
+          }
+          files.remove();
+          reportErrors(errors.remove());
         }
       }
-      return FileVisitResult.CONTINUE;
-    }
 
-    @Override
-    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attr) {
-      if (shouldExclude(dir)) {
-        return FileVisitResult.SKIP_SUBTREE;
+      /**
+       * Returns true if discovery will find no more files in the given directory.
+       *
+       * @param dir the directory of a held file
+       * @return true if discovery will find no more files in {@code dir}
+       */
+      private boolean hasLeft(Path dir) {
+        return discoveryComplete
+            || (files_from == null && lastFile != null && !lastFile.startsWith(dir));
       }
-      return FileVisitResult.CONTINUE;
     }
+  }
 
-    @Override
-    public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
-      if (exc != null) {
-        System.out.println("Problem visiting " + dir + ": " + exc.getMessage());
-        System.exit(2);
+  /**
+   * Returns the errors about declarations that contain a changed line.
+   *
+   * @param javaFile a Java file with a changed line
+   * @param errors the errors in the file
+   * @return the errors whose declarations contain a line listed in {@link #changed_lines}
+   */
+  @SuppressWarnings("nullness:dereference.of.nullable") // changedLines is non-null
+  private List<Diagnostic> changedErrors(Path javaFile, List<Diagnostic> errors) {
+    ChangedLines.LineIndex lines = changedLines.get(resolve(javaFile));
+    List<Diagnostic> result = new ArrayList<>();
+    if (lines != null) {
+      for (Diagnostic error : errors) {
+        int line = error.getLine();
+        if (lines.intersects(line, Math.max(line, error.getEndLine()))) {
+          result.add(error);
+        }
       }
-      return FileVisitResult.CONTINUE;
     }
+    return result;
+  }
 
-    @Override
-    public FileVisitResult visitFileFailed(Path file, IOException exc) {
-      if (exc != null) {
-        System.out.println("Problem visiting " + file + ": " + exc.getMessage());
-        System.exit(2);
+  /**
+   * Report the given errors to {@link #out}, up to the error limit.
+   *
+   * @param errors the errors to report
+   */
+  private void reportErrors(List<Diagnostic> errors) {
+    for (Diagnostic error : errors) {
+      if (errorLimitReached()) {
+        return;
+      }
+      out.println(error);
+      numErrors++;
+      if (reportedErrors != null) {
+        reportedErrors.add(error);
       }
-      return FileVisitResult.CONTINUE;
     }
   }
 
   /**
-   * Return true if the given Java element should not be checked, based on the {@code
-   * --dont-require} command-line argument.
+   * A parser for each thread that checks files. Each parser is configured once and then reused for
+   * every file that its thread checks.
+   */
+  private static final ThreadLocal<JavaParser> javaParser =
+      ThreadLocal.withInitial(() -> new JavaParser(newParserConfiguration()));
+
+  /**
+   * Returns a parser configuration that does only the work this program needs. The parser
+   * attributes comments to declarations, but it does not detect the line separator, does not
+   * preserve lexical information, and has no symbol resolver. It stores tokens, because comment
+   * attribution and the locations in parse error messages depend on them.
    *
-   * @param name the name of a Java element. It is a simple name, except for packages.
-   * @return true if no warnings should be issued about the element
+   * @return a parser configuration for checking Java files
    */
-  private boolean shouldNotRequire(String name) {
-    if (dont_require == null) {
-      return false;
-    }
-    boolean result = dont_require.matcher(name).find();
-    if (verbose) {
-      System.out.printf("shouldNotRequire(%s) => %s%n", name, result);
-    }
+  private static ParserConfiguration newParserConfiguration() {
+    ParserConfiguration result = new ParserConfiguration();
+    result.setLanguageLevel(ParserConfiguration.LanguageLevel.JAVA_17);
+    result.setAttributeComments(true);
+    result.setStoreTokens(true);
+    result.setDetectOriginalLineSeparator(false);
+    result.setLexicalPreservationEnabled(false);
     return result;
   }
 
   /**
-   * Return true if the given file or directory should be skipped, based on the {@code --exclude}
-   * command-line argument.
+   * Check one Java file.
    *
-   * @param fileName the name of a Java file or directory
-   * @return true if the file or directory should be skipped
+   * @param javaFile the file to check
+   * @param contents the contents of the file, which may be modified
+   * @return the problems found in the file
+   * @throws ParseProblemException if the file cannot be parsed
    */
-  private boolean shouldExclude(String fileName) {
-    if (exclude == null) {
-      return false;
+  private List<Diagnostic> checkJavaFile(Path javaFile, char[] contents) {
+    if (verbose) {
+      stdout.println("Checking " + javaFile);
     }
-    boolean result = exclude.matcher(fileName).find();
+    if (fast_scan && !verbose) {
+      // The scanner does not print the visitor's diagnostic output, so it is not used when verbose.
+      List<Diagnostic> errors = DeclarationScanner.scan(this, javaFile, contents);
+      if (errors != null) {
+        return errors;
+      }
+    }
+    if (skip_method_bodies) {
+      BodyEraser.erase(contents, dont_require_trivial_properties, dont_require_local_class);
+    }
+    ParseResult<CompilationUnit> parseResult =
+        javaParser.get().parse(ParseStart.COMPILATION_UNIT, SourceReader.provider(contents));
+    if (!parseResult.isSuccessful()) {
+      throw new ParseProblemException(parseResult.getProblems());
+    }
+    CompilationUnit cu = parseResult.getResult().get();
+    // The storage determines the primary type name, which identifies package-info.java files.
+    cu.setStorage(javaFile);
+    RequireJavadocVisitor visitor = new RequireJavadocVisitor(javaFile);
+    visitor.visit(cu, null);
     if (verbose) {
-      System.out.printf("shouldExclude(%s) => %s%n", fileName, result);
+      stdout.printf(
+          "Skipped %d of %d nodes in %s%n", visitor.prunedNodes, cu.stream().count(), javaFile);
     }
-    return result;
+    return visitor.fileErrors;
   }
 
   /**
-   * Return true if the given file or directory should be skipped, based on the {@code --exclude}
-   * command-line argument.
+   * Report a problem that prevented checking a file, and set {@link #problem}.
    *
-   * @param path a Java file or directory
-   * @return true if the file or directory should be skipped
+   * @param javaFile the file that could not be checked
+   * @param cause the problem: an IOException or a ParseProblemException
    */
-  private boolean shouldExclude(Path path) {
-    return shouldExclude(path.toString());
+  private void reportProblem(Path javaFile, @Nullable Throwable cause) {
+    out.flush();
+    if (cause instanceof IOException) {
+      problem =
+          new Problem(
+              Problem.Kind.UNREADABLE,
+              javaFile,
+              "Problem while reading " + javaFile + ": " + cause.getMessage());
+    } else if (cause instanceof ParseProblemException) {
+      problem =
+          new Problem(
+              Problem.Kind.UNPARSEABLE,
+              javaFile,
+              "Problem while parsing " + javaFile + ": " + cause.getMessage());
+    } else {
+      throw new Error("Problem while checking " + javaFile, cause);
+    }
+    stdout.println(problem);
   }
 
   /** A property method's return type. */
-  private enum ReturnType {
+  enum ReturnType {
     /** The return type is void. */
     VOID,
     /** The return type is boolean. */
@@ -369,7 +2136,7 @@ public class RequireJavadoc {
   }
 
   /** The type of property method: a getter or setter. */
-  private enum PropertyKind {
+  enum PropertyKind {
     /** A method of the form {@code SomeType getFoo()}. */
     GETTER("get", 0, ReturnType.NON_VOID),
     /** A method of the form {@code SomeType foo()}. */
@@ -423,7 +2190,16 @@ public class RequireJavadoc {
      * @return the PropertyKind for the given method, or null
      */
     static PropertyKind fromMethodDeclaration(MethodDeclaration md) {
-      String methodName = md.getNameAsString();
+      return fromMethodName(md.getNameAsString());
+    }
+
+    /**
+     * Return the PropertyKind for a method with the given name.
+     *
+     * @param methodName the name of a method
+     * @return the PropertyKind for a method with the given name
+     */
+    static PropertyKind fromMethodName(String methodName) {
       if (methodName.startsWith("get")) {
         return GETTER;
       } else if (methodName.startsWith("has")) {
@@ -492,7 +2268,18 @@ public class RequireJavadoc {
    * @return the name of the property, or null
    */
   private @Nullable String propertyName(MethodDeclaration md, PropertyKind propertyKind) {
-    String methodName = md.getNameAsString();
+    return propertyName(md.getNameAsString(), propertyKind);
+  }
+
+  /**
+   * Returns the name of the property, if a method with the given name is a getter or setter of the
+   * given kind. Otherwise returns null.
+   *
+   * @param methodName the name of a method
+   * @param propertyKind the type of property method
+   * @return the name of the property, or null
+   */
+  static @Nullable String propertyName(String methodName, PropertyKind propertyKind) {
     assert methodName.startsWith(propertyKind.prefix);
     @SuppressWarnings("index") // https://github.com/typetools/checker-framework/issues/5201
     String upperCamelCaseProperty = methodName.substring(propertyKind.prefix.length());
@@ -657,12 +2444,39 @@ public class RequireJavadoc {
     return statements.get(0);
   }
 
+  /**
+   * Returns the name of the given file as it appears in error messages.
+   *
+   * @param filename a Java file
+   * @return the name of the file as it appears in error messages
+   */
+  Path displayName(Path filename) {
+    return (relative
+        ? (filename.isAbsolute() ? workingDirAbsolute : workingDirRelative).relativize(filename)
+        : filename);
+  }
+
   /** Visits an AST and collects warnings about missing Javadoc. */
   private class RequireJavadocVisitor extends VoidVisitorAdapter<Void> {
 
     /** The file being visited. Used for constructing error messages. */
     private Path filename;
 
+    /** The errors found in the file being visited. */
+    private List<Diagnostic> fileErrors = new ArrayList<>();
+
+    /** The orphan Javadoc comments in the file being visited. */
+    private final CommentIndex commentIndex = new CommentIndex();
+
+    /** The places in the file being visited where local and anonymous classes might be declared. */
+    private final ClassIndex classIndex = new ClassIndex();
+
+    /**
+     * The number of nodes in bodies and initializers that were not visited because they declare no
+     * class. Only counted when {@link #verbose} is true.
+     */
+    private long prunedNodes = 0;
+
     /**
      * Create a new RequireJavadocVisitor.
      *
@@ -673,25 +2487,29 @@ public class RequireJavadoc {
     }
 
     /**
-     * Return a string stating that documentation is missing on the given construct.
+     * Return an error stating that documentation is missing on the given construct.
      *
      * @param node a Java language construct (class, constructor, method, field, etc.)
      * @param simpleName the construct's simple name, used in diagnostic messages
-     * @return an error message for the given construct
+     * @return an error for the given construct
      */
-    private String errorString(Node node, String simpleName) {
+    private Diagnostic error(Node node, String simpleName) {
       Optional<Range> range = node.getRange();
+      String file = displayName(filename).toString();
       if (range.isPresent()) {
         Position begin = range.get().begin;
-        Path path =
-            (relative
-                ? (filename.isAbsolute() ? workingDirAbsolute : workingDirRelative)
-                    .relativize(filename)
-                : filename);
-        return String.format(
-            "%s:%d:%d: missing documentation for %s", path, begin.line, begin.column, simpleName);
+        // A variable's declaration extends to the end of the field declaration that contains it.
+        Optional<Node> parent = node.getParentNode();
+        Optional<Range> declarationRange =
+            (node instanceof VariableDeclarator
+                    && parent.isPresent()
+                    && parent.get() instanceof FieldDeclaration
+                ? parent.get().getRange()
+                : range);
+        int endLine = declarationRange.orElse(range.get()).end.line;
+        return Diagnostic.missingDocumentation(file, begin.line, begin.column, endLine, simpleName);
       } else {
-        return "missing documentation for " + simpleName;
+        return Diagnostic.missingDocumentation(file, 0, 0, 0, simpleName);
       }
     }
 
@@ -708,11 +2526,11 @@ public class RequireJavadoc {
             && optTypeName.get().equals("package-info")
             && !hasJavadocComment(opd.get())
             && !hasJavadocComment(cu)) {
-          errors.add(errorString(opd.get(), packageName));
+          fileErrors.add(error(opd.get(), packageName));
         }
       }
       if (verbose) {
-        System.out.printf("Visiting compilation unit%n");
+        stdout.printf("Visiting compilation unit%n");
       }
       super.visit(cu, ignore);
     }
@@ -727,10 +2545,10 @@ public class RequireJavadoc {
         return;
       }
       if (verbose) {
-        System.out.printf("Visiting type %s%n", name);
+        stdout.printf("Visiting type %s%n", name);
       }
       if (!dont_require_type && !hasJavadocComment(cd)) {
-        errors.add(errorString(cd, name));
+        fileErrors.add(error(cd, name));
       }
       super.visit(cd, ignore);
     }
@@ -748,12 +2566,14 @@ public class RequireJavadoc {
         return;
       }
       if (verbose) {
-        System.out.printf("Visiting constructor %s%n", name);
+        stdout.printf("Visiting constructor %s%n", name);
       }
       if (!dont_require_method && !hasJavadocComment(cd)) {
-        errors.add(errorString(cd, name));
+        fileErrors.add(error(cd, name));
+      }
+      if (mayDeclareClass(cd)) {
+        super.visit(cd, ignore);
       }
-      super.visit(cd, ignore);
     }
 
     @Override
@@ -763,7 +2583,7 @@ public class RequireJavadoc {
       }
       if (dont_require_trivial_properties && isTrivialGetterOrSetter(md)) {
         if (verbose) {
-          System.out.printf("skipping trivial property method %s%n", md.getNameAsString());
+          stdout.printf("skipping trivial property method %s%n", md.getNameAsString());
         }
         return;
       }
@@ -772,12 +2592,28 @@ public class RequireJavadoc {
         return;
       }
       if (verbose) {
-        System.out.printf("Visiting method %s%n", md.getName());
+        stdout.printf("Visiting method %s%n", md.getName());
       }
       if (!dont_require_method && !isOverride(md) && !hasJavadocComment(md)) {
-        errors.add(errorString(md, name));
+        fileErrors.add(error(md, name));
+      }
+      if (mayDeclareClass(md)) {
+        super.visit(md, ignore);
+      }
+    }
+
+    @Override
+    public void visit(CompactConstructorDeclaration ccd, Void ignore) {
+      if (mayDeclareClass(ccd)) {
+        super.visit(ccd, ignore);
+      }
+    }
+
+    @Override
+    public void visit(InitializerDeclaration id, Void ignore) {
+      if (mayDeclareClass(id)) {
+        super.visit(id, ignore);
       }
-      super.visit(md, ignore);
     }
 
     @Override
@@ -788,7 +2624,7 @@ public class RequireJavadoc {
       // True if shouldNotRequire is false for at least one of the fields
       boolean shouldRequire = false;
       if (verbose) {
-        System.out.printf("Visiting field %s%n", fd.getVariables().get(0).getName());
+        stdout.printf("Visiting field %s%n", fd.getVariables().get(0).getName());
       }
       boolean hasJavadocComment = hasJavadocComment(fd);
       for (VariableDeclarator vd : fd.getVariables()) {
@@ -802,10 +2638,10 @@ public class RequireJavadoc {
         }
         shouldRequire = true;
         if (!dont_require_field && !hasJavadocComment) {
-          errors.add(errorString(vd, name));
+          fileErrors.add(error(vd, name));
         }
       }
-      if (shouldRequire) {
+      if (shouldRequire && mayDeclareClass(fd)) {
         super.visit(fd, ignore);
       }
     }
@@ -820,10 +2656,10 @@ public class RequireJavadoc {
         return;
       }
       if (verbose) {
-        System.out.printf("Visiting enum %s%n", name);
+        stdout.printf("Visiting enum %s%n", name);
       }
       if (!dont_require_type && !hasJavadocComment(ed)) {
-        errors.add(errorString(ed, name));
+        fileErrors.add(error(ed, name));
       }
       super.visit(ed, ignore);
     }
@@ -835,10 +2671,10 @@ public class RequireJavadoc {
         return;
       }
       if (verbose) {
-        System.out.printf("Visiting enum constant %s%n", name);
+        stdout.printf("Visiting enum constant %s%n", name);
       }
       if (!dont_require_field && !hasJavadocComment(ecd)) {
-        errors.add(errorString(ecd, name));
+        fileErrors.add(error(ecd, name));
       }
       super.visit(ecd, ignore);
     }
@@ -853,10 +2689,10 @@ public class RequireJavadoc {
         return;
       }
       if (verbose) {
-        System.out.printf("Visiting annotation %s%n", name);
+        stdout.printf("Visiting annotation %s%n", name);
       }
       if (!dont_require_type && !hasJavadocComment(ad)) {
-        errors.add(errorString(ad, name));
+        fileErrors.add(error(ad, name));
       }
       super.visit(ad, ignore);
     }
@@ -868,10 +2704,10 @@ public class RequireJavadoc {
         return;
       }
       if (verbose) {
-        System.out.printf("Visiting annotation member %s%n", name);
+        stdout.printf("Visiting annotation member %s%n", name);
       }
       if (!dont_require_method && !hasJavadocComment(amd)) {
-        errors.add(errorString(amd, name));
+        fileErrors.add(error(amd, name));
       }
       super.visit(amd, ignore);
     }
@@ -886,16 +2722,34 @@ public class RequireJavadoc {
         return;
       }
       if (verbose) {
-        System.out.printf("Visiting record %s%n", name);
+        stdout.printf("Visiting record %s%n", name);
       }
       if (!dont_require_type && !hasJavadocComment(rd)) {
-        errors.add(errorString(rd, name));
+        fileErrors.add(error(rd, name));
       }
       // Don't warn about record parameters, because Javadoc requires @param for them in the record
       // declaration itself.
       super.visit(rd, ignore);
     }
 
+    /**
+     * Returns true if the visitor should visit the children of the given method, constructor,
+     * initializer, or field: that is, if a local or anonymous class that should be checked might be
+     * declared in it.
+     *
+     * @param node a node whose body or initializer might declare a class
+     * @return true if the visitor should visit the children of the node
+     */
+    private boolean mayDeclareClass(Node node) {
+      if (!dont_require_local_class && classIndex.mayDeclareClass(node)) {
+        return true;
+      }
+      if (verbose) {
+        prunedNodes += node.stream().count() - 1;
+      }
+      return false;
+    }
+
     /**
      * Return true if this method is annotated with {@code @Override}.
      *
@@ -911,96 +2765,26 @@ public class RequireJavadoc {
       }
       return false;
     }
-  }
 
-  /**
-   * Return true if this node has a Javadoc comment.
-   *
-   * @param n the node to check for a Javadoc comment
-   * @return true if this node has a Javadoc comment
-   */
-  private boolean hasJavadocComment(Node n) {
-    if (n instanceof NodeWithJavadoc && ((NodeWithJavadoc<?>) n).hasJavaDocComment()) {
-      return true;
-    }
-    List<Comment> orphans = new ArrayList<>();
-    getOrphanCommentsBeforeThisChildNode(n, orphans);
-    for (Comment orphan : orphans) {
-      if (orphan.isJavadocComment()) {
+    /**
+     * Return true if this node has a Javadoc comment.
+     *
+     * @param n the node to check for a Javadoc comment
+     * @return true if this node has a Javadoc comment
+     */
+    private boolean hasJavadocComment(Node n) {
+      if (n instanceof NodeWithJavadoc && ((NodeWithJavadoc<?>) n).hasJavaDocComment()) {
         return true;
       }
-    }
-    Optional<Comment> oc = n.getComment();
-    if (oc.isPresent()
-        && (oc.get().isJavadocComment() || oc.get().getContent().startsWith("/**"))) {
-      return true;
-    }
-    return false;
-  }
-
-  /**
-   * Get "orphan comments": comments before the comment before this node. For example, in
-   *
-   * <pre>{@code
-   * /** ... *}{@code /
-   * // text 1
-   * // text 2
-   * void m() { ... }
-   * }</pre>
-   *
-   * <p>the Javadoc comment and {@code // text 1} are an orphan comment, and only {@code // text2}
-   * is associated with the method.
-   *
-   * @param node the node whose orphan comments to collect
-   * @param result the list to add orphan comments to. Is side-effected by this method. The
-   *     implementation uses this to minimize the diffs against upstream.
-   */
-  @SuppressWarnings({
-    "JdkObsolete", // for LinkedList
-    "interning:not.interned", // element of a list
-    "ReferenceEquality",
-  })
-  // This implementation is from Randoop's `Minimize.java` file, and before that from JavaParser's
-  // PrettyPrintVisitor.printOrphanCommentsBeforeThisChildNode.  The JavaParser maintainers refuse
-  // to provide such functionality in JavaParser proper.
-  private static void getOrphanCommentsBeforeThisChildNode(final Node node, List<Comment> result) {
-    if (node instanceof Comment) {
-      return;
-    }
-
-    Node parent = node.getParentNode().orElse(null);
-    if (parent == null) {
-      return;
-    }
-    List<Node> everything = new LinkedList<>(parent.getChildNodes());
-    sortByBeginPosition(everything);
-    int positionOfTheChild = -1;
-    for (int i = 0; i < everything.size(); i++) {
-      if (everything.get(i) == node) {
-        positionOfTheChild = i;
-      }
-    }
-    if (positionOfTheChild == -1) {
-      throw new AssertionError("I am not a child of my parent.");
-    }
-    int positionOfPreviousChild = -1;
-    for (int i = positionOfTheChild - 1; i >= 0 && positionOfPreviousChild == -1; i--) {
-      if (!(everything.get(i) instanceof Comment)) {
-        positionOfPreviousChild = i;
-      }
-    }
-    for (int i = positionOfPreviousChild + 1; i < positionOfTheChild; i++) {
-      Node nodeToPrint = everything.get(i);
-      if (!(nodeToPrint instanceof Comment)) {
-        throw new RuntimeException(
-            "Expected comment, instead "
-                + nodeToPrint.getClass()
-                + ". Position of previous child: "
-                + positionOfPreviousChild
-                + ", position of child "
-                + positionOfTheChild);
-      }
-      result.add((Comment) nodeToPrint);
+      if (commentIndex.hasOrphanJavadocBefore(n)) {
+        return true;
+      }
+      Optional<Comment> oc = n.getComment();
+      if (oc.isPresent()
+          && (oc.get().isJavadocComment() || oc.get().getContent().startsWith("/**"))) {
+        return true;
+      }
+      return false;
     }
   }
 }
@@ -0,0 +1,198 @@
+package org.plumelib.javadoc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A thin client that has a {@link RequireJavadocDaemon} check files, starting the daemon if none is
+ * running. It takes the same command-line arguments as {@link RequireJavadoc}, and it produces the
+ * same output and exit status.
+ */
+public final class RequireJavadocClient {
+
+  /** How long to wait for a newly started daemon to accept connections. */
+  private static final long START_TIMEOUT_MILLIS = 30_000;
+
+  /** How long to wait between attempts to connect to a newly started daemon. */
+  private static final long START_POLL_MILLIS = 50;
+
+  /** Do not instantiate. */
+  private RequireJavadocClient() {
+    throw new Error("Do not instantiate");
+  }
+
+  /**
+   * The main entry point for the require-javadoc client. See documentation at <a
+   * href="https://github.com/plume-lib/require-javadoc">https://github.com/plume-lib/require-javadoc</a>.
+   *
+   * @param args the command-line arguments; see the README.md file
+   */
+  public static void main(String[] args) {
+    int status;
+    try {
+      status = run(args);
+    } catch (IOException e) {
+      System.out.println("Problem while communicating with the daemon: " + e.getMessage());
+      status = 2;
+    }
+    System.exit(status);
+  }
+
+  /**
+   * Sends the arguments to the daemon, starting it if necessary, and copies its response to
+   * standard output and standard error.
+   *
+   * @param args the command-line arguments
+   * @return the exit status
+   * @throws IOException if communication with the daemon fails
+   */
+  private static int run(String[] args) throws IOException {
+    Path daemonFile = RequireJavadocDaemon.daemonFile();
+    Connection connection = Connection.open(daemonFile);
+    if (connection == null) {
+      startDaemon(daemonFile);
+      long deadline = System.currentTimeMillis() + START_TIMEOUT_MILLIS;
+      while (connection == null && System.currentTimeMillis() < deadline) {
+        try {
+          Thread.sleep(START_POLL_MILLIS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+        connection = Connection.open(daemonFile);
+      }
+      if (connection == null) {
+        System.out.println("Could not start the daemon; see " + logFile(daemonFile));
+        return 2;
+      }
+    }
+
+    try (Socket socket = connection.socket;
+        DataOutputStream out =
+            new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        DataInputStream in =
+            new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+      out.writeUTF(connection.token);
+      out.writeUTF(Paths.get("").toAbsolutePath().toString());
+      out.writeInt(args.length);
+      for (String arg : args) {
+        out.writeUTF(arg);
+      }
+      out.flush();
+
+      byte[] buffer = new byte[8192];
+      while (true) {
+        int frameType;
+        try {
+          frameType = in.readByte();
+        } catch (EOFException e) {
+          System.out.flush();
+          System.out.println("The daemon closed the connection without finishing");
+          return 2;
+        }
+        if (frameType == RequireJavadocDaemon.EXIT_FRAME) {
+          System.out.flush();
+          System.err.flush();
+          return in.readInt();
+        }
+        int length = in.readInt();
+        if (length > buffer.length) {
+          buffer = new byte[length];
+        }
+        in.readFully(buffer, 0, length);
+        if (frameType == RequireJavadocDaemon.STDOUT_FRAME) {
+          System.out.write(buffer, 0, length);
+        } else {
+          System.err.write(buffer, 0, length);
+        }
+      }
+    }
+  }
+
+  /**
+   * Starts a daemon, with the same Java installation and classpath as this process. The daemon
+   * outlives this process. Its output goes to a log file next to the daemon file.
+   *
+   * @param daemonFile the file in which the daemon will record its port and token
+   * @throws IOException if the daemon cannot be started
+   */
+  private static void startDaemon(Path daemonFile) throws IOException {
+    String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    File log = logFile(daemonFile).toFile();
+    @SuppressWarnings("nullness:assignment") // the log file is in ~/.require-javadoc/
+    @NonNull File logDir = log.getParentFile();
+    if (!logDir.isDirectory() && !logDir.mkdirs()) {
+      throw new IOException("Could not create " + logDir);
+    }
+    new ProcessBuilder(
+            java,
+            "-cp",
+            System.getProperty("java.class.path", ""),
+            RequireJavadocDaemon.class.getName())
+        .redirectErrorStream(true)
+        .redirectOutput(ProcessBuilder.Redirect.appendTo(log))
+        .start();
+  }
+
+  /**
+   * Returns the file to which a daemon started by this client writes its output.
+   *
+   * @param daemonFile the file in which the daemon records its port and token
+   * @return the daemon's log file
+   */
+  private static Path logFile(Path daemonFile) {
+    return Paths.get(daemonFile + ".log");
+  }
+
+  /** A connection to a running daemon. */
+  private static class Connection {
+
+    /** The socket connected to the daemon. */
+    final Socket socket;
+
+    /** The daemon's secret token. */
+    final String token;
+
+    /**
+     * Creates a new Connection.
+     *
+     * @param socket the socket connected to the daemon
+     * @param token the daemon's secret token
+     */
+    private Connection(Socket socket, String token) {
+      this.socket = socket;
+      this.token = token;
+    }
+
+    /**
+     * Connects to the daemon recorded in the given file.
+     *
+     * @param daemonFile the file in which the daemon records its port and token
+     * @return a connection to the daemon, or null if no daemon is running
+     */
+    static @Nullable Connection open(Path daemonFile) {
+      String[] portAndToken = RequireJavadocDaemon.readDaemonFile(daemonFile);
+      if (portAndToken == null) {
+        return null;
+      }
+      try {
+        int port = Integer.parseInt(portAndToken[0]);
+        return new Connection(new Socket(InetAddress.getLoopbackAddress(), port), portAndToken[1]);
+      } catch (IOException | NumberFormatException e) {
+        // The daemon has exited, or is still starting.
+        return null;
+      }
+    }
+  }
+}
@@ -0,0 +1,317 @@
+package org.plumelib.javadoc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.plumelib.options.Option;
+import org.plumelib.options.Options;
+
+/**
+ * A resident process that checks files for {@link RequireJavadocClient}, so that each check does
+ * not pay for starting a JVM, loading JavaParser, warming up the JIT compiler, and configuring a
+ * parser for each thread. The threads that check files, and their parsers, are kept between
+ * requests.
+ *
+ * <p>The daemon listens on a socket bound to the loopback address. It records the port and a secret
+ * token in a file in {@code ~/.require-javadoc/}, readable only by the user; a request that does
+ * not start with the token is ignored. There is one daemon per classpath, so a client never talks
+ * to a daemon running a different version of require-javadoc.
+ *
+ * <p>A request consists of the token, the client's working directory, and its command-line
+ * arguments. The response is a sequence of frames, each of which is a chunk of the client's
+ * standard output or standard error, followed by the exit status.
+ *
+ * <p>The daemon exits when it has received no request for {@link #idle_timeout} seconds.
+ */
+public final class RequireJavadocDaemon {
+
+  /** Exit after receiving no request for this many seconds; 0 means never. */
+  @Option("Exit after receiving no request for this many seconds; 0 means never")
+  public int idle_timeout = 3 * 60 * 60;
+
+  /** A frame of the response that is a chunk of standard output. */
+  static final int STDOUT_FRAME = 1;
+
+  /** A frame of the response that is a chunk of standard error. */
+  static final int STDERR_FRAME = 2;
+
+  /** The final frame of the response, which holds the exit status. */
+  static final int EXIT_FRAME = 3;
+
+  /** How long to wait for a client to send its request. */
+  private static final int REQUEST_TIMEOUT_MILLIS = 10_000;
+
+  /** The secret that a request must start with. */
+  private final String token = newToken();
+
+  /** The number of requests being handled. */
+  private final AtomicInteger activeRequests = new AtomicInteger();
+
+  /** Creates a new RequireJavadocDaemon. */
+  private RequireJavadocDaemon() {}
+
+  /**
+   * The main entry point for the require-javadoc daemon. Usually it is started by {@link
+   * RequireJavadocClient} rather than directly.
+   *
+   * @param args the command-line arguments
+   */
+  public static void main(String[] args) {
+    RequireJavadocDaemon daemon = new RequireJavadocDaemon();
+    Options options =
+        new Options("java org.plumelib.javadoc.RequireJavadocDaemon [options]", daemon);
+    String[] remainingArgs = options.parse(true, args);
+    if (remainingArgs.length != 0) {
+      System.out.println("Unexpected argument: " + remainingArgs[0]);
+      System.exit(2);
+    }
+    if (daemon.idle_timeout < 0) {
+      System.out.println("--idle-timeout must not be negative: " + daemon.idle_timeout);
+      System.exit(2);
+    }
+    try {
+      daemon.serve();
+    } catch (IOException e) {
+      System.out.println("Problem while running the daemon: " + e.getMessage());
+      System.exit(2);
+    }
+    System.exit(0);
+  }
+
+  /**
+   * Returns the file in which the daemon for this classpath records its port and token.
+   *
+   * @return the file in which the daemon records its port and token
+   */
+  static Path daemonFile() {
+    String classpath = System.getProperty("java.class.path", "");
+    String id = ResultCache.hash(classpath.getBytes(StandardCharsets.UTF_8)).substring(0, 16);
+    return Paths.get(System.getProperty("user.home"), ".require-javadoc", "daemon-" + id);
+  }
+
+  /**
+   * Accepts and handles requests until no request has been received for {@link #idle_timeout}
+   * seconds. Returns immediately if another daemon for this classpath is running.
+   *
+   * @throws IOException if the socket or the daemon file cannot be created
+   */
+  private void serve() throws IOException {
+    Path daemonFile = daemonFile();
+    Path dir = daemonFile.toAbsolutePath().getParent();
+    if (dir == null) {
+      throw new IOException("No parent directory for " + daemonFile);
+    }
+    Files.createDirectories(dir);
+    Path lockFile = Paths.get(daemonFile + ".lock");
+    try (FileChannel lockChannel =
+            FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock = lockChannel.tryLock()) {
+      if (lock == null) {
+        System.out.println("Another daemon is running for " + daemonFile);
+        return;
+      }
+      ExecutorService executor = Executors.newCachedThreadPool();
+      // The threads that check files live as long as the daemon.
+      ExecutorService workers =
+          RequireJavadoc.newWorkerPool(idle_timeout == 0 ? Long.MAX_VALUE : idle_timeout);
+      try (ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+        writeDaemonFile(daemonFile, serverSocket.getLocalPort());
+        // The timeout is in milliseconds, as an int, so it is at most about 24 days.
+        serverSocket.setSoTimeout((int) Math.min(idle_timeout * 1000L, Integer.MAX_VALUE));
+        while (true) {
+          Socket socket;
+          try {
+            socket = serverSocket.accept();
+          } catch (SocketTimeoutException e) {
+            if (activeRequests.get() == 0) {
+              break;
+            }
+            continue;
+          }
+          activeRequests.incrementAndGet();
+          executor.execute(
+              () -> {
+                try {
+                  handle(socket, workers);
+                } finally {
+                  activeRequests.decrementAndGet();
+                }
+              });
+        }
+      } finally {
+        Files.deleteIfExists(daemonFile);
+        executor.shutdown();
+        workers.shutdown();
+      }
+    }
+  }
+
+  /**
+   * Writes the daemon file, which is readable only by the user.
+   *
+   * @param daemonFile the daemon file
+   * @param port the port on which the daemon listens
+   * @throws IOException if the file cannot be written
+   */
+  private void writeDaemonFile(Path daemonFile, int port) throws IOException {
+    Path dir = daemonFile.toAbsolutePath().getParent();
+    if (dir == null) {
+      throw new IOException("No parent directory for " + daemonFile);
+    }
+    // A temporary file is readable only by the user.
+    Path tmp = Files.createTempFile(dir, "daemon", ".tmp");
+    Files.write(tmp, (port + " " + token + "\n").getBytes(StandardCharsets.UTF_8));
+    Files.move(tmp, daemonFile, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Handles one request, then closes the socket.
+   *
+   * @param socket the connection to the client
+   * @param workers the threads that check files
+   */
+  private void handle(Socket socket, ExecutorService workers) {
+    try (Socket s = socket;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+        DataOutputStream out =
+            new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+      s.setSoTimeout(REQUEST_TIMEOUT_MILLIS);
+      if (!token.equals(in.readUTF())) {
+        return;
+      }
+      Path workingDir = Paths.get(in.readUTF());
+      String[] args = new String[in.readInt()];
+      for (int i = 0; i < args.length; i++) {
+        args[i] = in.readUTF();
+      }
+
+      PrintStream stdout = newPrintStream(out, STDOUT_FRAME);
+      PrintStream stderr = newPrintStream(out, STDERR_FRAME);
+      int status;
+      try {
+        status = RequireJavadoc.run(args, workingDir, stdout, stderr, workers);
+      } catch (Throwable e) {
+        e.printStackTrace(stderr);
+        status = 2;
+      }
+      stdout.flush();
+      stderr.flush();
+      synchronized (out) {
+        out.writeByte(EXIT_FRAME);
+        out.writeInt(status);
+        out.flush();
+      }
+    } catch (IOException e) {
+      // The client went away.  There is no one to report the problem to.
+    }
+  }
+
+  /**
+   * Returns a stream that sends what is written to it as frames of the given type.
+   *
+   * @param out the connection to the client
+   * @param frameType {@link #STDOUT_FRAME} or {@link #STDERR_FRAME}
+   * @return a stream that sends what is written to it to the client
+   */
+  private static PrintStream newPrintStream(DataOutputStream out, int frameType) {
+    try {
+      return new PrintStream(
+          new BufferedOutputStream(new FrameOutputStream(out, frameType)),
+          false,
+          Charset.defaultCharset().name());
+    } catch (UnsupportedEncodingException e) {
+      throw new Error("The default charset is not supported", e);
+    }
+  }
+
+  /**
+   * Returns a new random token.
+   *
+   * @return a new random token
+   */
+  private static String newToken() {
+    byte[] bytes = new byte[16];
+    new SecureRandom().nextBytes(bytes);
+    return ResultCache.hash(bytes);
+  }
+
+  /**
+   * Reads the daemon file.
+   *
+   * @param daemonFile the daemon file
+   * @return the port and the token, or null if the file does not exist or is malformed
+   */
+  static String @Nullable [] readDaemonFile(Path daemonFile) {
+    List<String> lines;
+    try {
+      lines = Files.readAllLines(daemonFile, StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      return null;
+    }
+    if (lines.size() != 1) {
+      return null;
+    }
+    String[] portAndToken = lines.get(0).split(" ");
+    return (portAndToken.length == 2 ? portAndToken : null);
+  }
+
+  /** Sends what is written to it as frames of one type. */
+  private static class FrameOutputStream extends OutputStream {
+
+    /** The connection to the client. Frames of different types are interleaved on it. */
+    private final DataOutputStream out;
+
+    /** The type of the frames. */
+    private final int frameType;
+
+    /**
+     * Creates a new FrameOutputStream.
+     *
+     * @param out the connection to the client
+     * @param frameType the type of the frames
+     */
+    FrameOutputStream(DataOutputStream out, int frameType) {
+      this.out = out;
+      this.frameType = frameType;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      synchronized (out) {
+        out.writeByte(frameType);
+        out.writeInt(len);
+        out.write(b, off, len);
+        out.flush();
+      }
+    }
+  }
+}
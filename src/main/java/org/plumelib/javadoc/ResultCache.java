@@ -0,0 +1,383 @@
+package org.plumelib.javadoc;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonParseException;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A record of the errors in each Java file, kept in a file between runs. A file whose size,
+ * modification time, and content hash match the record is not parsed again; its recorded errors are
+ * reported instead.
+ *
+ * <p>The record also holds a digest of the whole set of files and all the errors reported for it.
+ * If no file has been added, removed, or modified since, the recorded errors are reported without
+ * looking at any file individually.
+ *
+ * <p>The record is valid only for the option values that produced it. If any option that affects
+ * the errors has changed, the whole record is discarded.
+ */
+final class ResultCache {
+
+  /**
+   * The version of the cache file format and of the checking logic. Increment it whenever either
+   * changes, so that stale cache files are discarded.
+   */
+  static final int VERSION = 3;
+
+  /**
+   * Modification times within this many milliseconds of the time a record was made are not trusted,
+   * because the file might have been modified again within the file system's timestamp granularity.
+   */
+  private static final long TIMESTAMP_GRANULARITY_MILLIS = 2000;
+
+  /** The file in which the cache is kept. */
+  private final Path cacheFile;
+
+  /** The contents of the cache file when it was read. Not modified. */
+  private final CacheContents previous;
+
+  /** The contents to write to the cache file. Only modified by the output stage. */
+  private final CacheContents current;
+
+  /**
+   * Creates a new ResultCache.
+   *
+   * @param cacheFile the file in which the cache is kept
+   * @param previous the contents of the cache file when it was read
+   * @param current the contents to write to the cache file
+   */
+  private ResultCache(Path cacheFile, CacheContents previous, CacheContents current) {
+    this.cacheFile = cacheFile;
+    this.previous = previous;
+    this.current = current;
+  }
+
+  /**
+   * Reads a cache file. Returns an empty cache if the file does not exist, cannot be read, or was
+   * written with different options.
+   *
+   * @param cacheFile the file in which the cache is kept
+   * @param optionsFingerprint a hash of the values of all options that affect the errors
+   * @param stderr where to print a warning if the file cannot be read
+   * @return the cache
+   */
+  static ResultCache load(Path cacheFile, String optionsFingerprint, PrintStream stderr) {
+    CacheContents current = new CacheContents(optionsFingerprint, System.currentTimeMillis());
+    CacheContents previous = null;
+    if (Files.exists(cacheFile)) {
+      try (BufferedReader reader = Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8)) {
+        previous = new Gson().fromJson(reader, CacheContents.class);
+      } catch (IOException | JsonParseException e) {
+        stderr.println("Ignoring " + cacheFile + ": " + e.getMessage());
+      }
+    }
+    if (previous == null
+        || previous.version != VERSION
+        || !optionsFingerprint.equals(previous.options)
+        || previous.files == null) {
+      previous = new CacheContents(optionsFingerprint, 0);
+    }
+    return new ResultCache(cacheFile, previous, current);
+  }
+
+  /**
+   * Returns the recorded errors for a file whose size and modification time match the record, or
+   * null if there is no such record. Does not read the file.
+   *
+   * @param file the name of the file, as reported in errors
+   * @param size the size of the file
+   * @param modified the modification time of the file, in milliseconds
+   * @return the recorded errors, or null
+   */
+  @Nullable Entry lookup(String file, long size, long modified) {
+    Entry entry = previous.files.get(file);
+    if (entry != null
+        && entry.size == size
+        && entry.modified == modified
+        && modified + TIMESTAMP_GRANULARITY_MILLIS < previous.timestamp) {
+      return entry;
+    }
+    return null;
+  }
+
+  /**
+   * Returns the recorded errors for a file whose contents have the given hash, or null if there is
+   * no such record.
+   *
+   * @param file the name of the file, as reported in errors
+   * @param hash the hash of the file's contents
+   * @return the recorded errors, or null
+   */
+  @Nullable Entry lookup(String file, String hash) {
+    Entry entry = previous.files.get(file);
+    if (entry != null && hash.equals(entry.hash)) {
+      return entry;
+    }
+    return null;
+  }
+
+  /**
+   * Returns all the errors reported for the given set of files, or null if the set of files or any
+   * of them has changed since the record was made.
+   *
+   * @param treeDigest the digest of the set of files
+   * @return the recorded errors, or null
+   */
+  @Nullable List<Diagnostic> lookupTree(TreeDigest treeDigest) {
+    if (treeDigest.digest.equals(previous.treeDigest)
+        && previous.treeErrors != null
+        && treeDigest.newestModified + TIMESTAMP_GRANULARITY_MILLIS < previous.timestamp) {
+      return previous.treeErrors;
+    }
+    return null;
+  }
+
+  /**
+   * Records all the errors reported for a set of files, to be written by {@link #save}.
+   *
+   * @param treeDigest the digest of the set of files
+   * @param errors all the errors reported for the files, in order
+   */
+  void recordTree(TreeDigest treeDigest, List<Diagnostic> errors) {
+    current.treeDigest = treeDigest.digest;
+    current.treeErrors = errors;
+  }
+
+  /**
+   * Records the errors in a file, to be written by {@link #save}.
+   *
+   * @param file the name of the file, as reported in errors
+   * @param entry the file's size, modification time, hash, and errors
+   */
+  void record(String file, Entry entry) {
+    current.files.put(file, entry);
+  }
+
+  /**
+   * Writes the cache file. Replaces the previous cache file atomically, so a concurrent reader sees
+   * either the old or the new contents.
+   *
+   * <p>The records of files that this run did not check, as when it was given fewer files or {@code
+   * --since}, are kept, so that a later run over all the files can use them. Only the records of
+   * files that no longer exist are dropped.
+   *
+   * @param resolver resolves the pathname of a file for use in file system operations
+   * @throws IOException if the cache file cannot be written
+   */
+  void save(UnaryOperator<Path> resolver) throws IOException {
+    for (Map.Entry<String, Entry> mapEntry : previous.files.entrySet()) {
+      String file = mapEntry.getKey();
+      if (current.files.containsKey(file) || !Files.exists(resolver.apply(Paths.get(file)))) {
+        continue;
+      }
+      Entry entry = mapEntry.getValue();
+      if (entry.modified + TIMESTAMP_GRANULARITY_MILLIS >= previous.timestamp) {
+        // The modification time was not trusted when the record was made, and the later timestamp
+        // of this run must not make it trusted.  The hash still identifies the contents.
+        entry = new Entry(entry.size, Long.MIN_VALUE, entry.hash, entry.errors);
+      }
+      current.files.put(file, entry);
+    }
+    Path dir = cacheFile.toAbsolutePath().getParent();
+    if (dir == null) {
+      throw new IOException("No parent directory for " + cacheFile);
+    }
+    Files.createDirectories(dir);
+    Path tmp = Files.createTempFile(dir, "require-javadoc", ".tmp");
+    try {
+      try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+        new Gson().toJson(current, writer);
+      } catch (JsonIOException e) {
+        // Gson wraps the IOException of the writer, as when the disk is full.
+        throw new IOException(e.getMessage(), e);
+      }
+      Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      // Does nothing if the file was moved.
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /**
+   * Returns a hash of the given bytes, as a hexadecimal string.
+   *
+   * @param bytes the bytes to hash
+   * @return a hash of the bytes
+   */
+  static String hash(byte[] bytes) {
+    return toHex(newMessageDigest().digest(bytes));
+  }
+
+  /**
+   * Returns a hash of the bytes between the buffer's position and limit, as a hexadecimal string.
+   *
+   * @param bytes the bytes to hash; the buffer is not modified
+   * @return a hash of the bytes
+   */
+  static String hash(ByteBuffer bytes) {
+    MessageDigest digest = newMessageDigest();
+    digest.update(bytes.duplicate());
+    return toHex(digest.digest());
+  }
+
+  /**
+   * Returns a new SHA-256 message digest.
+   *
+   * @return a new SHA-256 message digest
+   */
+  private static MessageDigest newMessageDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new Error("SHA-256 is required of every Java platform", e);
+    }
+  }
+
+  /**
+   * Returns the given bytes as a hexadecimal string.
+   *
+   * @param hash the bytes
+   * @return the bytes as a hexadecimal string
+   */
+  private static String toHex(byte[] hash) {
+    StringBuilder result = new StringBuilder(2 * hash.length);
+    for (byte b : hash) {
+      result.append(Character.forDigit((b >> 4) & 0xF, 16));
+      result.append(Character.forDigit(b & 0xF, 16));
+    }
+    return result.toString();
+  }
+
+  /** The contents of a cache file. */
+  private static class CacheContents {
+
+    /** The version of the program that wrote the cache file. */
+    int version = VERSION;
+
+    /** A hash of the values of all options that affect the errors. */
+    String options;
+
+    /** The time at which the run that wrote this cache file started, in milliseconds. */
+    long timestamp;
+
+    /** Maps the name of each file, as reported in errors, to its record. */
+    Map<String, Entry> files = new LinkedHashMap<>();
+
+    /** The digest of the set of files that was last checked completely, or null. */
+    @Nullable String treeDigest;
+
+    /** All the errors reported for the files whose digest is {@link #treeDigest}, or null. */
+    @Nullable List<Diagnostic> treeErrors;
+
+    /**
+     * Creates a new, empty CacheContents.
+     *
+     * @param options a hash of the values of all options that affect the errors
+     * @param timestamp the time at which this run started, in milliseconds
+     */
+    CacheContents(String options, long timestamp) {
+      this.options = options;
+      this.timestamp = timestamp;
+    }
+  }
+
+  /**
+   * A digest of a list of files: of their names, sizes, and modification times. It changes when a
+   * file is added, removed, renamed, or modified.
+   */
+  static class TreeDigest {
+
+    /** The digest. */
+    final String digest;
+
+    /** The latest modification time of any of the files, in milliseconds. */
+    final long newestModified;
+
+    /**
+     * Creates a new TreeDigest.
+     *
+     * @param digest the digest
+     * @param newestModified the latest modification time of any of the files, in milliseconds
+     */
+    private TreeDigest(String digest, long newestModified) {
+      this.digest = digest;
+      this.newestModified = newestModified;
+    }
+
+    /**
+     * Returns the digest of the given files.
+     *
+     * @param javaFiles the files, in the order they are checked
+     * @param resolver resolves the pathname of a file for use in file system operations
+     * @return the digest of the files
+     * @throws IOException if the attributes of a file cannot be read
+     */
+    static TreeDigest of(List<Path> javaFiles, UnaryOperator<Path> resolver) throws IOException {
+      MessageDigest digest = newMessageDigest();
+      long newestModified = Long.MIN_VALUE;
+      StringBuilder line = new StringBuilder();
+      for (Path javaFile : javaFiles) {
+        BasicFileAttributes attrs =
+            Files.readAttributes(resolver.apply(javaFile), BasicFileAttributes.class);
+        long modified = attrs.lastModifiedTime().toMillis();
+        newestModified = Math.max(newestModified, modified);
+        line.setLength(0);
+        line.append(javaFile).append('\0').append(attrs.size()).append('\0').append(modified);
+        line.append('\n');
+        digest.update(line.toString().getBytes(StandardCharsets.UTF_8));
+      }
+      return new TreeDigest(toHex(digest.digest()), newestModified);
+    }
+  }
+
+  /** The record of one file. */
+  static class Entry {
+
+    /** The size of the file. */
+    final long size;
+
+    /** The modification time of the file, in milliseconds. */
+    final long modified;
+
+    /** The hash of the file's contents. */
+    final String hash;
+
+    /** The errors in the file. */
+    final List<Diagnostic> errors;
+
+    /**
+     * Creates a new Entry.
+     *
+     * @param size the size of the file
+     * @param modified the modification time of the file, in milliseconds
+     * @param hash the hash of the file's contents
+     * @param errors the errors in the file
+     */
+    Entry(long size, long modified, String hash, List<Diagnostic> errors) {
+      this.size = size;
+      this.modified = modified;
+      this.hash = hash;
+      this.errors = Collections.unmodifiableList(new ArrayList<>(errors));
+    }
+  }
+}
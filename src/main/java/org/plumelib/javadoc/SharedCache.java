@@ -0,0 +1,279 @@
+package org.plumelib.javadoc;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A directory of errors, keyed by the contents of a Java file and the options fingerprint, that can
+ * be shared by several checkouts and by several concurrent processes. The errors are stored without
+ * the file name, so a file that appears under different names (in different checkouts, branches, or
+ * vendored copies) is parsed only once.
+ *
+ * <p>Each entry is a separate file, written to a temporary file and then moved into place, so a
+ * concurrent reader sees either no entry or a complete one. The modification time of an entry is
+ * its last use; when the directory exceeds its byte budget, the least recently used entries are
+ * deleted.
+ */
+final class SharedCache {
+
+  /** The type of an entry: the errors in a file, without the file name. */
+  private static final Type ENTRY_TYPE = new TypeToken<List<Diagnostic>>() {}.getType();
+
+  /** The directory in which entries are kept. */
+  private final Path dir;
+
+  /** A hash of the values of all options that affect the errors. */
+  private final String optionsFingerprint;
+
+  /** The maximum number of bytes in the directory; 0 means no limit. */
+  private final long maxBytes;
+
+  /**
+   * A temporary file whose last modification is older than this, in milliseconds, was left by a
+   * process that failed or was killed while writing an entry, and is deleted by {@link #evict}.
+   */
+  private static final long STALE_TEMP_FILE_MILLIS = 60 * 60 * 1000;
+
+  /** True if this process has tried to write at least one entry. */
+  private final AtomicBoolean written = new AtomicBoolean(false);
+
+  /** Where problems with the directory are reported. */
+  private final PrintStream stderr;
+
+  /** True if a problem with the directory has been reported; later ones are not. */
+  private final AtomicBoolean warned = new AtomicBoolean(false);
+
+  /**
+   * Creates a new SharedCache.
+   *
+   * @param dir the directory in which entries are kept
+   * @param optionsFingerprint a hash of the values of all options that affect the errors
+   * @param maxBytes the maximum number of bytes in the directory; 0 means no limit
+   * @param stderr where problems with the directory are reported
+   */
+  SharedCache(Path dir, String optionsFingerprint, long maxBytes, PrintStream stderr) {
+    this.dir = dir;
+    this.optionsFingerprint = optionsFingerprint;
+    this.maxBytes = maxBytes;
+    this.stderr = stderr;
+  }
+
+  /**
+   * Returns the key of the entry for a file. Whether the file is a {@code package-info.java} file
+   * is part of the key, because it affects the errors.
+   *
+   * @param file the file
+   * @param hash the hash of the file's contents
+   * @return the key of the entry for the file
+   */
+  String key(Path file, String hash) {
+    Path fileName = file.getFileName();
+    boolean isPackageInfo = fileName != null && fileName.toString().equals("package-info.java");
+    String key =
+        ResultCache.VERSION
+            + "\n"
+            + optionsFingerprint
+            + "\n"
+            + hash
+            + (isPackageInfo ? "\npackage-info" : "");
+    return ResultCache.hash(key.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Returns the recorded errors for the given key, or null if there is no entry.
+   *
+   * @param key the key, as returned by {@link #key}
+   * @param displayName the name of the file, as reported in errors
+   * @return the recorded errors, or null
+   */
+  @Nullable List<Diagnostic> lookup(String key, String displayName) {
+    Path entryFile = entryFile(key);
+    List<Diagnostic> stored;
+    try (BufferedReader reader = Files.newBufferedReader(entryFile, StandardCharsets.UTF_8)) {
+      stored = new Gson().fromJson(reader, ENTRY_TYPE);
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException | JsonParseException e) {
+      warn(entryFile, e);
+      return null;
+    }
+    if (stored == null) {
+      return null;
+    }
+    try {
+      // Record the use, for least-recently-used eviction.
+      Files.setLastModifiedTime(entryFile, FileTime.fromMillis(System.currentTimeMillis()));
+    } catch (IOException e) {
+      // The entry was evicted by another process, or is read-only.  Either way, it was read.
+    }
+    List<Diagnostic> errors = new ArrayList<>(stored.size());
+    for (Diagnostic error : stored) {
+      errors.add(error.withFile(displayName));
+    }
+    return errors;
+  }
+
+  /**
+   * Records the errors for the given key. Problems writing the entry are reported once, and
+   * otherwise ignored.
+   *
+   * @param key the key, as returned by {@link #key}
+   * @param errors the errors in the file
+   */
+  void store(String key, List<Diagnostic> errors) {
+    List<Diagnostic> stored = new ArrayList<>(errors.size());
+    for (Diagnostic error : errors) {
+      stored.add(error.withFile(""));
+    }
+    Path entryFile = entryFile(key);
+    written.set(true);
+    try {
+      @SuppressWarnings("nullness:assignment") // an entry file is in a subdirectory of dir
+      @NonNull Path subdir = entryFile.getParent();
+      Files.createDirectories(subdir);
+      Path tmp = Files.createTempFile(subdir, "entry", ".tmp");
+      try {
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+          new Gson().toJson(stored, ENTRY_TYPE, writer);
+        } catch (JsonIOException e) {
+          // Gson wraps the IOException of the writer, as when the disk is full.
+          throw new IOException(e.getMessage(), e);
+        }
+        try {
+          Files.move(tmp, entryFile, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+          Files.move(tmp, entryFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+      } finally {
+        // Does nothing if the file was moved.
+        Files.deleteIfExists(tmp);
+      }
+    } catch (IOException e) {
+      warn(entryFile, e);
+    }
+  }
+
+  /**
+   * If this process has tried to add entries, deletes the temporary files that other runs left
+   * behind, and, if the directory exceeds its byte budget, deletes the least recently used entries
+   * until it does not. Entries deleted concurrently by another process are ignored.
+   *
+   * @throws IOException if the directory cannot be read
+   */
+  void evict() throws IOException {
+    if (!written.get()) {
+      return;
+    }
+    long staleBefore = System.currentTimeMillis() - STALE_TEMP_FILE_MILLIS;
+    List<EntryFile> entries = new ArrayList<>();
+    long totalBytes = 0;
+    try (DirectoryStream<Path> subdirs = Files.newDirectoryStream(dir, Files::isDirectory)) {
+      for (Path subdir : subdirs) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(subdir, "*.{json,tmp}")) {
+          for (Path file : files) {
+            BasicFileAttributes attrs;
+            try {
+              attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+              continue;
+            }
+            long modified = attrs.lastModifiedTime().toMillis();
+            if (!file.toString().endsWith(".json")) {
+              // A temporary file that another process may still be writing is left alone.
+              if (modified < staleBefore) {
+                Files.deleteIfExists(file);
+              }
+              continue;
+            }
+            entries.add(new EntryFile(file, attrs.size(), modified));
+            totalBytes += attrs.size();
+          }
+        } catch (NoSuchFileException e) {
+          // Another process removed the subdirectory.
+        }
+      }
+    }
+    if (maxBytes == 0 || totalBytes <= maxBytes) {
+      return;
+    }
+    entries.sort(Comparator.comparingLong((EntryFile entry) -> entry.lastUsed));
+    for (EntryFile entry : entries) {
+      if (totalBytes <= maxBytes) {
+        break;
+      }
+      Files.deleteIfExists(entry.file);
+      totalBytes -= entry.size;
+    }
+  }
+
+  /**
+   * Returns the file that holds the entry for the given key. Entries are spread over 256
+   * subdirectories, so that no directory becomes very large.
+   *
+   * @param key the key, as returned by {@link #key}
+   * @return the file that holds the entry
+   */
+  private Path entryFile(String key) {
+    return dir.resolve(key.substring(0, 2)).resolve(key.substring(2) + ".json");
+  }
+
+  /**
+   * Reports a problem with the cache directory, unless one has already been reported.
+   *
+   * @param file the file that could not be read or written
+   * @param e the problem
+   */
+  private void warn(Path file, Exception e) {
+    if (warned.compareAndSet(false, true)) {
+      stderr.println("Problem with cache entry " + file + ": " + e.getMessage());
+    }
+  }
+
+  /** An entry file, as seen when evicting. */
+  private static class EntryFile {
+
+    /** The entry file. */
+    final Path file;
+
+    /** The size of the entry file. */
+    final long size;
+
+    /** The last use of the entry, in milliseconds. */
+    final long lastUsed;
+
+    /**
+     * Creates a new EntryFile.
+     *
+     * @param file the entry file
+     * @param size the size of the entry file
+     * @param lastUsed the last use of the entry, in milliseconds
+     */
+    EntryFile(Path file, long size, long lastUsed) {
+      this.file = file;
+      this.size = size;
+      this.lastUsed = lastUsed;
+    }
+  }
+}
@@ -0,0 +1,150 @@
+package org.plumelib.javadoc;
+
+import com.github.javaparser.Provider;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads Java source files with as few system calls and copies as possible. A file is read with a
+ * single bulk read into a buffer that is reused from file to file, or, if it is very large, mapped
+ * into memory. It is decoded from UTF-8 directly into the array of characters that the checker
+ * uses, with a fast path for the common case of a file that is entirely ASCII.
+ *
+ * <p>A SourceReader is not thread-safe. Use one per reading thread.
+ */
+final class SourceReader {
+
+  /** Files at least this large are mapped into memory rather than read into the buffer. */
+  private static final long MAP_THRESHOLD = 1L << 22;
+
+  /** The buffer into which files are read; it grows as needed. */
+  private ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+
+  /** The decoder for files that are not entirely ASCII. Like {@code new String}, it never fails. */
+  private final CharsetDecoder decoder =
+      StandardCharsets.UTF_8
+          .newDecoder()
+          .onMalformedInput(CodingErrorAction.REPLACE)
+          .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+  /** Creates a new SourceReader. */
+  SourceReader() {}
+
+  /**
+   * Reads the contents of a file. The result is valid only until the next call to this method.
+   *
+   * @param file the file to read
+   * @return the contents of the file, between the buffer's position and limit
+   * @throws IOException if the file cannot be read
+   */
+  ByteBuffer read(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size >= MAP_THRESHOLD) {
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      }
+      if (size > buffer.capacity()) {
+        buffer = ByteBuffer.allocate((int) Math.max(size, 2L * buffer.capacity()));
+      }
+      buffer.clear();
+      buffer.limit((int) size);
+      // Usually a single read suffices. Don't read again to find the end of the file.
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer) < 0) {
+          break;
+        }
+      }
+      buffer.flip();
+      return buffer;
+    }
+  }
+
+  /**
+   * Decodes the contents of a file from UTF-8. Malformed input is replaced, as by {@code new
+   * String(bytes, StandardCharsets.UTF_8)}.
+   *
+   * @param bytes the contents of a file, between the buffer's position and limit; not modified
+   * @return the decoded contents
+   */
+  char[] decode(ByteBuffer bytes) {
+    int start = bytes.position();
+    int length = bytes.remaining();
+    char[] chars = new char[length];
+    int i = 0;
+    if (bytes.hasArray()) {
+      byte[] array = bytes.array();
+      int offset = bytes.arrayOffset() + start;
+      while (i < length && array[offset + i] >= 0) {
+        chars[i] = (char) array[offset + i];
+        i++;
+      }
+    } else {
+      while (i < length && bytes.get(start + i) >= 0) {
+        chars[i] = (char) bytes.get(start + i);
+        i++;
+      }
+    }
+    if (i == length) {
+      return chars;
+    }
+    // Not ASCII. Decoding UTF-8 never yields more characters than there are bytes.
+    ByteBuffer rest = bytes.duplicate();
+    rest.position(start + i);
+    CharBuffer out = CharBuffer.wrap(chars, i, length - i);
+    decoder.reset();
+    decoder.decode(rest, out, true);
+    decoder.flush(out);
+    return out.position() == length ? chars : Arrays.copyOf(chars, out.position());
+  }
+
+  /**
+   * Returns a JavaParser provider that reads the given characters without copying them first.
+   *
+   * @param source Java source code
+   * @return a provider of the source code
+   */
+  static Provider provider(char[] source) {
+    return new CharArrayProvider(source);
+  }
+
+  /** A provider of characters from an array, which it does not copy. */
+  private static final class CharArrayProvider implements Provider {
+
+    /** The characters to provide. */
+    private final char[] source;
+
+    /** The index of the next character to provide. */
+    private int pos = 0;
+
+    /**
+     * Creates a new CharArrayProvider.
+     *
+     * @param source the characters to provide
+     */
+    CharArrayProvider(char[] source) {
+      this.source = source;
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int len) {
+      if (pos == source.length) {
+        return -1;
+      }
+      int n = Math.min(len, source.length - pos);
+      System.arraycopy(source, pos, buffer, offset, n);
+      pos += n;
+      return n;
+    }
+
+    @Override
+    public void close() {}
+  }
+}
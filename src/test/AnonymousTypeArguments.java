@@ -0,0 +1,22 @@
+import java.util.List;
+
+/** Anonymous classes whose type arguments are arrays. */
+class AnonymousTypeArguments {
+
+  /**
+   * An interface to implement.
+   *
+   * @param <T> a type
+   */
+  interface Foo<T> {}
+
+  /** Declares anonymous classes. */
+  void declare() {
+    Object o1 = new Foo<int[]>() { public void m() {} };
+    Object o2 =
+        new Foo<List<byte[]>>() {
+          public void n() {}
+        };
+    int[] a = new int[] {1, 2};
+  }
+}
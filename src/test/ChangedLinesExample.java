@@ -0,0 +1,21 @@
+/** Declarations, some of which changed in changed-lines.diff. */
+class ChangedLinesExample {
+
+  public void unchanged() {}
+
+  public int changedBody() {
+    int result = 1;
+    return result;
+  }
+
+  /** Documented, and changed. */
+  public void documented() {
+    unchanged();
+  }
+
+  public void changedSignature(int y) {}
+
+  public void deletedLine() {
+    unchanged();
+  }
+}